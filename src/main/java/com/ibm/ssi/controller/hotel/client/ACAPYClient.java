@@ -25,8 +25,10 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.bind.annotation.*;
 
+// injected as the GuardedACAPYClient, which wraps the calls in circuit breakers
 @Repository
-@FeignClient(name = "ACAPYClient", url = "${ssibk.hotel.controller.agent.apiurl}")
+@FeignClient(name = "ACAPYClient", url = "${ssibk.hotel.controller.agent.apiurl}", configuration = PooledFeignClientConfiguration.class,
+    primary = false, qualifier = "acapyFeignClient")
 public interface ACAPYClient {
 
     @RequestMapping(method = RequestMethod.POST, value = "/connections/create-invitation")
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the state of the circuit breakers of the agent.
+ * <p>
+ * The health stays up while a circuit breaker is open: it rolls up into the health of the whole controller, and an
+ * agent outage must not take the controller out of the load balancer, SSE and login do not depend on the agent.
+ */
+@Component
+public class ACAPYClientHealthIndicator extends AbstractHealthIndicator {
+
+    private final GuardedACAPYClient acapyClient;
+
+    public ACAPYClientHealthIndicator(GuardedACAPYClient acapyClient) {
+        super("Agent health check failed");
+        this.acapyClient = acapyClient;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        int open = 0;
+        for (Map.Entry<String, CircuitBreaker> entry : acapyClient.getCircuitBreakers().entrySet()) {
+            CircuitBreaker circuitBreaker = entry.getValue();
+            CircuitBreaker.State state = circuitBreaker.getState();
+            if (state == CircuitBreaker.State.OPEN) {
+                open++;
+            }
+
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", state);
+            details.put("failureRate", circuitBreaker.getFailureRate());
+            builder.withDetail(entry.getKey(), details);
+        }
+        builder.withDetail("openCircuitBreakers", open).up();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.client;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown instead of calling the agent while its circuit breaker is open or too many calls are in flight.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class AgentUnavailableException extends RuntimeException {
+
+    public AgentUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.client;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker.
+ * <p>
+ * The outcomes of the last calls are kept in a sliding window. Once the window holds enough calls and the share of
+ * failed calls reaches the threshold, the breaker opens and rejects all calls. After the wait duration it lets a few
+ * trial calls through: if all of them succeed the breaker closes again, a single failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureRateThreshold;
+
+    private final int minimumCalls;
+
+    private final long waitDurationInOpenState;
+
+    private final int permittedCallsInHalfOpenState;
+
+    private final LongSupplier clock;
+
+    // outcomes of the last calls, true for a failure
+    private final boolean[] window;
+
+    private int windowPosition;
+
+    private int windowCalls;
+
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int halfOpenPermits;
+
+    private int halfOpenSuccesses;
+
+    /**
+     * @param failureRateThreshold          percentage of failed calls in the window that opens the breaker.
+     * @param slidingWindowSize             number of calls in the window.
+     * @param minimumCalls                  number of calls needed before the failure rate is evaluated.
+     * @param waitDurationInOpenState       milliseconds the breaker stays open before trial calls are permitted.
+     * @param permittedCallsInHalfOpenState number of trial calls which must succeed to close the breaker.
+     */
+    public CircuitBreaker(int failureRateThreshold, int slidingWindowSize, int minimumCalls,
+            long waitDurationInOpenState, int permittedCallsInHalfOpenState) {
+        this(failureRateThreshold, slidingWindowSize, minimumCalls, waitDurationInOpenState,
+            permittedCallsInHalfOpenState, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int failureRateThreshold, int slidingWindowSize, int minimumCalls, long waitDurationInOpenState,
+            int permittedCallsInHalfOpenState, LongSupplier clock) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[Math.max(slidingWindowSize, 1)];
+        this.minimumCalls = Math.min(Math.max(minimumCalls, 1), window.length);
+        this.waitDurationInOpenState = waitDurationInOpenState;
+        this.permittedCallsInHalfOpenState = Math.max(permittedCallsInHalfOpenState, 1);
+        this.clock = clock;
+    }
+
+    /**
+     * Asks for permission to call the protected operation, the outcome of a permitted call must be reported by
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return whether the call is permitted.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < waitDurationInOpenState) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= permittedCallsInHalfOpenState) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCalls >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCalls) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the percentage of failed calls in the window, -1 if the window does not hold enough calls yet.
+     */
+    public synchronized float getFailureRate() {
+        return windowCalls < minimumCalls ? -1 : windowFailures * 100f / windowCalls;
+    }
+
+    private void record(boolean failure) {
+        if (windowCalls == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowPosition] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void transitionTo(State newState) {
+        state = newState;
+        switch (newState) {
+            case OPEN:
+                openedAt = clock.getAsLong();
+                break;
+            case HALF_OPEN:
+                halfOpenPermits = permittedCallsInHalfOpenState;
+                halfOpenSuccesses = 0;
+                break;
+            case CLOSED:
+                windowPosition = 0;
+                windowCalls = 0;
+                windowFailures = 0;
+                break;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.ibm.ssi.controller.hotel.client.model.InvitationDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofRecordDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofResponseDTO;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link ACAPYClient} injected everywhere, it protects the callers from a slow or failing agent.
+ * <p>
+ * Every operation of the proof flow has its own circuit breaker and bulkhead: a call fails fast with an
+ * {@link AgentUnavailableException} while the breaker of the operation is open, or when the maximum number of calls
+ * of the operation is already in flight. Thereby a brown-out of the agent cannot block all request threads.
+ * Responses with a 4xx status are answers of a healthy agent and do not count as failures.
+ */
+@Primary
+@Component
+public class GuardedACAPYClient implements ACAPYClient {
+
+    public static final String CREATE_PROOF_REQUEST = "createProofRequest";
+
+    public static final String GET_PROOF_RECORD = "getProofRecord";
+
+    public static final String DELETE_PROOF_RECORD = "deleteProofRecord";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GuardedACAPYClient.class);
+
+    private final ACAPYClient delegate;
+
+    private final Map<String, Guard> guards;
+
+    public GuardedACAPYClient(@Qualifier("acapyFeignClient") ACAPYClient delegate, MeterRegistry meterRegistry,
+            @Value("${ssibk.hotel.controller.agent.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+            @Value("${ssibk.hotel.controller.agent.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${ssibk.hotel.controller.agent.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${ssibk.hotel.controller.agent.circuit-breaker.wait-duration-in-open-state:10000}") long waitDurationInOpenState,
+            @Value("${ssibk.hotel.controller.agent.circuit-breaker.permitted-calls-in-half-open-state:3}") int permittedCallsInHalfOpenState,
+            @Value("${ssibk.hotel.controller.agent.bulkhead.max-concurrent-calls:20}") int maxConcurrentCalls,
+            @Value("${ssibk.hotel.controller.agent.bulkhead.max-wait:0}") long maxWait) {
+        this.delegate = delegate;
+
+        Map<String, Guard> guards = new LinkedHashMap<>();
+        for (String operation : Arrays.asList(CREATE_PROOF_REQUEST, GET_PROOF_RECORD, DELETE_PROOF_RECORD)) {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(failureRateThreshold, slidingWindowSize, minimumCalls,
+                waitDurationInOpenState, permittedCallsInHalfOpenState);
+            guards.put(operation, new Guard(operation, circuitBreaker, maxConcurrentCalls, maxWait, meterRegistry));
+        }
+        this.guards = Collections.unmodifiableMap(guards);
+    }
+
+    @Override
+    public InvitationDTO createInvitation(String apiKey, String alias) {
+        return delegate.createInvitation(apiKey, alias);
+    }
+
+    @Override
+    public ProofResponseDTO createProofRequest(String apiKey, ProofRequestDTO proofRequest) {
+        return guards.get(CREATE_PROOF_REQUEST).call(() -> delegate.createProofRequest(apiKey, proofRequest));
+    }
+
+    @Override
+    public ProofRecordDTO getProofRecord(String apiKey, String presentationExchangeId) {
+        return guards.get(GET_PROOF_RECORD).call(() -> delegate.getProofRecord(apiKey, presentationExchangeId));
+    }
+
+    @Override
+    public void deleteProofRecord(String apiKey, String presentationExchangeId) {
+        guards.get(DELETE_PROOF_RECORD).call(() -> {
+            delegate.deleteProofRecord(apiKey, presentationExchangeId);
+            return null;
+        });
+    }
+
+    /**
+     * @return the circuit breaker of every guarded operation, by operation name.
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        Map<String, CircuitBreaker> circuitBreakers = new LinkedHashMap<>();
+        guards.forEach((operation, guard) -> circuitBreakers.put(operation, guard.circuitBreaker));
+        return circuitBreakers;
+    }
+
+    private static boolean isFailure(RuntimeException e) {
+        if (!(e instanceof FeignException)) {
+            return true;
+        }
+        // IO errors have no status
+        int status = ((FeignException) e).status();
+        return status < 0 || status >= 500;
+    }
+
+    private static final class Guard {
+
+        private static final List<CircuitBreaker.State> STATES = Arrays.asList(CircuitBreaker.State.values());
+
+        private final String operation;
+
+        private final CircuitBreaker circuitBreaker;
+
+        private final Semaphore bulkhead;
+
+        private final long maxWait;
+
+        private final Counter rejectedOpen;
+
+        private final Counter rejectedFull;
+
+        private Guard(String operation, CircuitBreaker circuitBreaker, int maxConcurrentCalls, long maxWait,
+                MeterRegistry meterRegistry) {
+            this.operation = operation;
+            this.circuitBreaker = circuitBreaker;
+            this.bulkhead = new Semaphore(maxConcurrentCalls);
+            this.maxWait = maxWait;
+
+            Gauge.builder("hotel.controller.agent.circuit.breaker.state", circuitBreaker, c -> STATES.indexOf(c.getState()))
+                .description("State of the circuit breaker, 0 closed, 1 open, 2 half open")
+                .tag("operation", operation)
+                .register(meterRegistry);
+            Gauge.builder("hotel.controller.agent.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Number of further calls which may be in flight")
+                .tag("operation", operation)
+                .register(meterRegistry);
+            this.rejectedOpen = Counter.builder("hotel.controller.agent.calls.rejected")
+                .description("Number of calls failed fast without calling the agent")
+                .tags("operation", operation, "reason", "circuit-open")
+                .register(meterRegistry);
+            this.rejectedFull = Counter.builder("hotel.controller.agent.calls.rejected")
+                .description("Number of calls failed fast without calling the agent")
+                .tags("operation", operation, "reason", "bulkhead-full")
+                .register(meterRegistry);
+        }
+
+        private <T> T call(Supplier<T> call) {
+            if (!acquireBulkhead()) {
+                rejectedFull.increment();
+                throw new AgentUnavailableException("Too many calls of " + operation + " in flight");
+            }
+            try {
+                if (!circuitBreaker.tryAcquirePermission()) {
+                    rejectedOpen.increment();
+                    throw new AgentUnavailableException("Circuit breaker of " + operation + " is open");
+                }
+                try {
+                    T result = call.get();
+                    circuitBreaker.onSuccess();
+                    return result;
+                } catch (RuntimeException e) {
+                    if (isFailure(e)) {
+                        circuitBreaker.onFailure();
+                        if (circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+                            LOG.warn("Circuit breaker of {} is open after: {}", operation, e.toString());
+                        }
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                    throw e;
+                }
+            } finally {
+                bulkhead.release();
+            }
+        }
+
+        private boolean acquireBulkhead() {
+            if (maxWait <= 0) {
+                return bulkhead.tryAcquire();
+            }
+            try {
+                return bulkhead.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.client;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+/**
+ * Applies {@code ssibk.hotel.controller.http-client.keep-alive} to the idle timeout of the HttpClient connections.
+ * <p>
+ * The idle timeout is a JVM-wide system property which the JDK reads once, when the first HttpClient is created, so
+ * it is set from the environment before any bean is created. A system property given on the command line wins.
+ */
+public class HttpClientKeepAlive implements EnvironmentPostProcessor {
+
+    static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        Long keepAlive = environment.getProperty(PooledFeignClientConfiguration.PREFIX + "keep-alive", Long.class);
+        if (keepAlive != null && System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+            System.setProperty(KEEP_ALIVE_PROPERTY, String.valueOf(Math.max(keepAlive / 1000, 1)));
+        }
+    }
+}
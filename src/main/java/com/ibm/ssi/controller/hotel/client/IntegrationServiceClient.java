@@ -24,7 +24,8 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 
-@FeignClient(name = "HotelIntegrationClient", url = "${ssibk.hotel.controller.integrationservice.apiurl}")
+@FeignClient(name = "HotelIntegrationClient", url = "${ssibk.hotel.controller.integrationservice.apiurl}",
+    configuration = PooledFeignClientConfiguration.class)
 public interface IntegrationServiceClient {
 
     @RequestMapping(method = RequestMethod.POST, value = "/lookup")
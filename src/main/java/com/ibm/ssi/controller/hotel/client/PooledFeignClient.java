@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Feign {@link Client} on top of a {@link HttpClient} which keeps its connections open between requests.
+ * <p>
+ * The number of requests in flight, and thereby the number of connections to the target, is limited per client. A
+ * request waits at most the connect timeout for a free connection before it fails, and at most the read timeout for
+ * the response.
+ */
+public class PooledFeignClient implements Client {
+
+    // set by the HttpClient itself, it refuses requests which contain them
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(Arrays.asList("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private final String name;
+
+    private final HttpClient httpClient;
+
+    private final int maxConnections;
+
+    private final Semaphore connections;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Counter rejected;
+
+    /**
+     * @param name           the name of the Feign client, used to tag the metrics.
+     * @param httpClient     the client sending the requests.
+     * @param maxConnections the maximum number of requests in flight.
+     * @param meterRegistry  the registry of the pool metrics.
+     */
+    public PooledFeignClient(String name, HttpClient httpClient, int maxConnections, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.httpClient = httpClient;
+        this.maxConnections = maxConnections;
+        this.connections = new Semaphore(maxConnections, true);
+
+        Gauge.builder("hotel.controller.http.client.connections.active", this, PooledFeignClient::getActiveConnections)
+            .description("Number of requests in flight")
+            .tag("client", name)
+            .register(meterRegistry);
+        Gauge.builder("hotel.controller.http.client.connections.max", this, PooledFeignClient::getMaxConnections)
+            .description("Maximum number of requests in flight")
+            .tag("client", name)
+            .register(meterRegistry);
+        Gauge.builder("hotel.controller.http.client.connections.pending", pending, AtomicInteger::get)
+            .description("Number of requests waiting for a free connection")
+            .tag("client", name)
+            .register(meterRegistry);
+        this.rejected = Counter.builder("hotel.controller.http.client.connections.rejected")
+            .description("Number of requests failed because no connection got free in time")
+            .tag("client", name)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        HttpRequest httpRequest = toHttpRequest(request, options);
+
+        acquire(options);
+        try {
+            HttpResponse<byte[]> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+            return Response.builder()
+                .status(httpResponse.statusCode())
+                .headers(new HashMap<>(httpResponse.headers().map()))
+                .body(httpResponse.body())
+                .request(request)
+                .build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response of " + request.url());
+        } finally {
+            connections.release();
+        }
+    }
+
+    int getActiveConnections() {
+        return maxConnections - connections.availablePermits();
+    }
+
+    int getMaxConnections() {
+        return maxConnections;
+    }
+
+    private void acquire(Request.Options options) throws IOException {
+        pending.incrementAndGet();
+        try {
+            if (!connections.tryAcquire(options.connectTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new IOException("No free connection of " + name + " within " + options.connectTimeoutMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free connection of " + name);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private static HttpRequest toHttpRequest(Request request, Request.Options options) {
+        byte[] body = request.body();
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .uri(URI.create(request.url()))
+            .timeout(Duration.ofMillis(options.readTimeoutMillis()))
+            .method(request.httpMethod().name(), body != null
+                ? HttpRequest.BodyPublishers.ofByteArray(body)
+                : HttpRequest.BodyPublishers.noBody());
+
+        for (Map.Entry<String, Collection<String>> header : request.headers().entrySet()) {
+            if (RESTRICTED_HEADERS.contains(header.getKey())) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.client;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import feign.Client;
+import feign.Request;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Configuration of the HTTP connections of a Feign client, referenced by {@code @FeignClient(configuration = ...)}.
+ * <p>
+ * Deliberately not annotated with {@code @Configuration}: it must not be picked up by the component scan, Spring Cloud
+ * OpenFeign instantiates it in a separate context per Feign client. Every setting is read from
+ * {@code ssibk.hotel.controller.http-client.<client name>} and falls back to
+ * {@code ssibk.hotel.controller.http-client.default}, except the keep-alive which {@link HttpClientKeepAlive} applies
+ * to all clients.
+ */
+public class PooledFeignClientConfiguration {
+
+    static final String PREFIX = "ssibk.hotel.controller.http-client.";
+
+    private final Environment environment;
+
+    private final String name;
+
+    public PooledFeignClientConfiguration(Environment environment, @Value("${feign.client.name}") String name) {
+        this.environment = environment;
+        this.name = name;
+    }
+
+    @Bean
+    public Request.Options feignRequestOptions() {
+        return new Request.Options(getProperty("connect-timeout", Long.class, 2000L), TimeUnit.MILLISECONDS,
+            getProperty("read-timeout", Long.class, 10000L), TimeUnit.MILLISECONDS, true);
+    }
+
+    @Bean
+    public Client feignClient(Request.Options options, MeterRegistry meterRegistry) {
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(getProperty("http2", Boolean.class, false) ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(options.connectTimeoutMillis()))
+            .followRedirects(options.isFollowRedirects() ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER)
+            .build();
+        return new PooledFeignClient(name, httpClient, getProperty("max-connections", Integer.class, 20), meterRegistry);
+    }
+
+    private <T> T getProperty(String key, Class<T> type, T defaultValue) {
+        return environment.getProperty(PREFIX + name + "." + key, type,
+            environment.getProperty(PREFIX + "default." + key, type, defaultValue));
+    }
+}
@@ -21,7 +21,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 
-@FeignClient(name = "TRELLOClient", url = "${ssibk.hotel.controller.trello.apiurl}")
+@FeignClient(name = "TRELLOClient", url = "${ssibk.hotel.controller.trello.apiurl}", configuration = PooledFeignClientConfiguration.class)
 public interface TRELLOClient {
 
     @RequestMapping(method = RequestMethod.POST, value = "/1/cards")
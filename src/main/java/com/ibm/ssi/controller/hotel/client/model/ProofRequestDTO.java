@@ -29,6 +29,10 @@ public class ProofRequestDTO {
 
     }
 
+    public ProofRequest getProofRequest() {
+        return proofRequest;
+    }
+
     public void setProofRequest(ProofRequest proofRequest) {
         this.proofRequest = proofRequest;
     }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.config.dbmigrations;
+
+import com.github.mongobee.changeset.ChangeLog;
+import com.github.mongobee.changeset.ChangeSet;
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/**
+ * Creates the indexes of the check-in credential queries.
+ */
+@ChangeLog(order = "002")
+public class CheckInCredentialIndexesMigration {
+
+    @ChangeSet(order = "01", author = "initiator", id = "01-addCheckInCredentialIndexes")
+    public void addCheckInCredentialIndexes(MongoTemplate mongoTemplate) {
+        IndexOperations indexOperations = mongoTemplate.indexOps(CheckInCredential.class);
+
+        // the sent check-in credentials of a desk, ordered by scan date
+        indexOperations.ensureIndex(new Index()
+            .on("hotelId", Sort.Direction.ASC)
+            .on("deskId", Sort.Direction.ASC)
+            .on("scanDate", Sort.Direction.ASC)
+            .named("hotelId_deskId_scanDate_sent")
+            .partial(PartialIndexFilter.of(Criteria.where("sendDate").exists(true))));
+
+        // the check-in credential a webhook of the agent refers to
+        ensurePresentationExchangeIdIndex(mongoTemplate);
+    }
+
+    @ChangeSet(order = "02", author = "initiator", id = "02-addCheckInCredentialExpiryIndexes")
+    public void addCheckInCredentialExpiryIndexes(MongoTemplate mongoTemplate) {
+        IndexOperations indexOperations = mongoTemplate.indexOps(CheckInCredential.class);
+
+        // the check-in credentials scanned before the unsent TTL
+        indexOperations.ensureIndex(new Index()
+            .on("scanDate", Sort.Direction.ASC)
+            .named("scanDate"));
+
+        // the check-in credentials sent before the retention
+        indexOperations.ensureIndex(new Index()
+            .on("sendDate", Sort.Direction.ASC)
+            .named("sendDate_sent")
+            .partial(PartialIndexFilter.of(Criteria.where("sendDate").exists(true))));
+    }
+
+    @ChangeSet(order = "03", author = "initiator", id = "03-addIdToCheckInCredentialDeskIndex")
+    public void addIdToCheckInCredentialDeskIndex(MongoTemplate mongoTemplate) {
+        IndexOperations indexOperations = mongoTemplate.indexOps(CheckInCredential.class);
+
+        // the desk list is paged by scan date and id, the id breaks ties between equal scan dates
+        indexOperations.ensureIndex(new Index()
+            .on("hotelId", Sort.Direction.ASC)
+            .on("deskId", Sort.Direction.ASC)
+            .on("scanDate", Sort.Direction.ASC)
+            .on("_id", Sort.Direction.ASC)
+            .named("hotelId_deskId_scanDate_id_sent")
+            .partial(PartialIndexFilter.of(Criteria.where("sendDate").exists(true))));
+        if (indexOperations.getIndexInfo().stream().anyMatch(index -> index.getName().equals("hotelId_deskId_scanDate_sent"))) {
+            indexOperations.dropIndex("hotelId_deskId_scanDate_sent");
+        }
+    }
+
+    @ChangeSet(order = "04", author = "initiator", id = "04-makePresentationExchangeIdIndexPartial")
+    public void makePresentationExchangeIdIndexPartial(MongoTemplate mongoTemplate) {
+        IndexOperations indexOperations = mongoTemplate.indexOps(CheckInCredential.class);
+
+        // check-in credentials without a presentation exchange id must not collide on the unique index
+        if (indexOperations.getIndexInfo().stream().anyMatch(index -> index.getName().equals("presentationExchangeId")
+                && index.getPartialFilterExpression() == null)) {
+            indexOperations.dropIndex("presentationExchangeId");
+        }
+        ensurePresentationExchangeIdIndex(mongoTemplate);
+    }
+
+    /**
+     * Creates the unique index of the presentation exchange ids, fails if a presentation exchange id is used by
+     * several check-in credentials.
+     */
+    private void ensurePresentationExchangeIdIndex(MongoTemplate mongoTemplate) {
+        Aggregation duplicatesAggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("presentationExchangeId").exists(true)),
+            Aggregation.group("presentationExchangeId").count().as("count"),
+            Aggregation.match(Criteria.where("count").gt(1)),
+            Aggregation.limit(10));
+        List<Object> duplicates = mongoTemplate.aggregate(duplicatesAggregation, CheckInCredential.class, Document.class)
+            .getMappedResults().stream()
+            .map(duplicate -> duplicate.get("_id"))
+            .collect(Collectors.toList());
+        if (!duplicates.isEmpty()) {
+            throw new IllegalStateException("Cannot create the unique index on presentationExchangeId, "
+                + "remove the duplicate check-in credentials of the presentation exchange ids " + duplicates);
+        }
+
+        // only check-in credentials which have a presentation exchange id, a plain equality query implies the filter
+        mongoTemplate.indexOps(CheckInCredential.class).ensureIndex(new Index()
+            .on("presentationExchangeId", Sort.Direction.ASC)
+            .named("presentationExchangeId")
+            .unique()
+            .partial(PartialIndexFilter.of(Criteria.where("presentationExchangeId").exists(true))));
+    }
+}
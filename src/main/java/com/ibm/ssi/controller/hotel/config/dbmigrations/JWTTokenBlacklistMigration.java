@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.config.dbmigrations;
+
+import java.util.Date;
+
+import com.github.mongobee.changeset.ChangeLog;
+import com.github.mongobee.changeset.ChangeSet;
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
+import com.ibm.ssi.controller.hotel.security.jwt.JWTTokenBlacklist;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Creates the indexes of the JWT token blacklist.
+ */
+@ChangeLog(order = "003")
+public class JWTTokenBlacklistMigration {
+
+    @ChangeSet(order = "01", author = "initiator", id = "01-addJWTTokenBlacklistCreatedAtIndex")
+    public void addCreatedAtIndex(MongoTemplate mongoTemplate) {
+        // the tokens blacklisted since the last refresh of the in-memory blacklist
+        mongoTemplate.indexOps(BlacklistedJWTToken.class).ensureIndex(new Index()
+            .on("createdAt", Sort.Direction.ASC)
+            .named("createdAt"));
+    }
+
+    @ChangeSet(order = "02", author = "initiator", id = "02-storeJWTTokenDigests")
+    public void storeDigests(MongoTemplate mongoTemplate) {
+        // entries stored before contain the whole token
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(BlacklistedJWTToken.class));
+        Date now = new Date();
+        for (Document legacy : collection.find(Filters.exists("token"))) {
+            String token = legacy.getString("token");
+            Date expiresAt = JWTTokenBlacklist.readExpiration(token);
+            // tokens which expired, or were not issued by us, are rejected without the blacklist
+            if (expiresAt != null && expiresAt.after(now)) {
+                BlacklistedJWTToken blacklistedToken = new BlacklistedJWTToken(JWTTokenBlacklist.digest(token), expiresAt);
+                if (legacy.getDate("createdAt") != null) {
+                    blacklistedToken.setCreatedAt(legacy.getDate("createdAt"));
+                }
+                mongoTemplate.save(blacklistedToken);
+            }
+            collection.deleteOne(Filters.eq("_id", legacy.get("_id")));
+        }
+
+        // the entries are deleted once their token expired
+        mongoTemplate.indexOps(BlacklistedJWTToken.class).ensureIndex(new Index()
+            .on("expiresAt", Sort.Direction.ASC)
+            .named("expiresAt")
+            .expire(0));
+    }
+}
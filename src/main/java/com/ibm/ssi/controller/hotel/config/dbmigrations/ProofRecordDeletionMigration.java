@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.config.dbmigrations;
+
+import com.github.mongobee.changeset.ChangeLog;
+import com.github.mongobee.changeset.ChangeSet;
+import com.ibm.ssi.controller.hotel.domain.PendingProofRecordDeletion;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * Creates the indexes of the pending proof record deletions.
+ */
+@ChangeLog(order = "005")
+public class ProofRecordDeletionMigration {
+
+    @ChangeSet(order = "01", author = "initiator", id = "01-addPendingProofRecordDeletionNextAttemptIndex")
+    public void addNextAttemptIndex(MongoTemplate mongoTemplate) {
+        // the due deletions, earliest first
+        mongoTemplate.indexOps(PendingProofRecordDeletion.class).ensureIndex(new Index()
+            .on("nextAttempt", Sort.Direction.ASC)
+            .named("nextAttempt"));
+    }
+}
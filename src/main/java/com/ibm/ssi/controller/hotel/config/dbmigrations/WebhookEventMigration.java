@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.config.dbmigrations;
+
+import com.github.mongobee.changeset.ChangeLog;
+import com.github.mongobee.changeset.ChangeSet;
+import com.ibm.ssi.controller.hotel.domain.WebhookEvent;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+/**
+ * Creates the indexes of the webhook queue.
+ */
+@ChangeLog(order = "004")
+public class WebhookEventMigration {
+
+    @ChangeSet(order = "01", author = "initiator", id = "01-addWebhookEventIndexes")
+    public void addWebhookEventIndexes(MongoTemplate mongoTemplate) {
+        IndexOperations indexOperations = mongoTemplate.indexOps(WebhookEvent.class);
+
+        // the unprocessed events whose claim expired, oldest claim first
+        indexOperations.ensureIndex(new Index()
+            .on("processedAt", Sort.Direction.ASC)
+            .on("claimedAt", Sort.Direction.ASC)
+            .named("processedAt_claimedAt"));
+
+        // processed events are kept for a day to detect late retries of the agent
+        indexOperations.ensureIndex(new Index()
+            .on("processedAt", Sort.Direction.ASC)
+            .named("processedAt")
+            .expire(86400));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.ssi.controller.hotel.domain;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A revoked JWT token. The token itself is not stored, only its digest.
+ */
+@Document(collection = "JWTTokenBlacklist")
+public class BlacklistedJWTToken {
+
+    /**
+     * SHA-256 digest of the token.
+     */
+    @Id
+    private String digest;
+
+    /**
+     * Expiration of the token, the entry is deleted by a TTL index afterwards.
+     */
+    private Date expiresAt;
+
+    private Date createdAt = new Date();
+
+    public BlacklistedJWTToken() {}
+
+    public BlacklistedJWTToken(String digest, Date expiresAt) {
+        this.digest = digest;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "BlacklistedJWTToken [digest=" + digest + ", expiresAt=" + expiresAt + ", createdAt=" + createdAt + "]";
+    }
+}
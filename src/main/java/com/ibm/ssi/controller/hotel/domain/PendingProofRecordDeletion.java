@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.ssi.controller.hotel.domain;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+
+/**
+ * A proof record which still has to be deleted from the agent.
+ */
+public class PendingProofRecordDeletion {
+
+    @Id
+    private String presentationExchangeId;
+
+    private Date createdAt = new Date();
+
+    private Date nextAttempt = new Date();
+
+    private int attempts;
+
+    public PendingProofRecordDeletion() {}
+
+    public PendingProofRecordDeletion(String presentationExchangeId) {
+        this.presentationExchangeId = presentationExchangeId;
+    }
+
+    public String getPresentationExchangeId() {
+        return presentationExchangeId;
+    }
+
+    public void setPresentationExchangeId(String presentationExchangeId) {
+        this.presentationExchangeId = presentationExchangeId;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    @Override
+    public String toString() {
+        return "PendingProofRecordDeletion [presentationExchangeId=" + presentationExchangeId + ", attempts=" + attempts
+            + ", nextAttempt=" + nextAttempt + "]";
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.domain;
+
+import java.util.Date;
+
+import com.ibm.ssi.controller.hotel.service.dto.WebhookPresentProofDTO;
+
+import org.springframework.data.annotation.Id;
+
+/**
+ * A webhook of the agent which was acknowledged and is processed in the background.
+ * <p>
+ * The id is derived from the presentation exchange and its state, so a retried delivery of the same webhook is
+ * rejected as a duplicate. Processed events lose their payload and are kept for a day to detect late retries.
+ */
+public class WebhookEvent {
+
+    @Id
+    private String id;
+
+    private String presentationExchangeId;
+
+    private String state;
+
+    private WebhookPresentProofDTO payload;
+
+    private Date receivedAt;
+
+    // when a node last took over the processing, the event is redelivered if it is not processed in time
+    private Date claimedAt;
+
+    private int attempts;
+
+    private Date processedAt;
+
+    public WebhookEvent() {}
+
+    public WebhookEvent(WebhookPresentProofDTO payload) {
+        this.id = createId(payload.getPresentationExchangeId(), payload.getState());
+        this.presentationExchangeId = payload.getPresentationExchangeId();
+        this.state = payload.getState();
+        this.payload = payload;
+        this.receivedAt = new Date();
+        this.claimedAt = receivedAt;
+    }
+
+    public static String createId(String presentationExchangeId, String state) {
+        return presentationExchangeId + ":" + state;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getPresentationExchangeId() {
+        return presentationExchangeId;
+    }
+
+    public void setPresentationExchangeId(String presentationExchangeId) {
+        this.presentationExchangeId = presentationExchangeId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public WebhookPresentProofDTO getPayload() {
+        return payload;
+    }
+
+    public void setPayload(WebhookPresentProofDTO payload) {
+        this.payload = payload;
+    }
+
+    public Date getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void setReceivedAt(Date receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
+    public Date getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Date claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(Date processedAt) {
+        this.processedAt = processedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "WebhookEvent [id=" + id + ", attempts=" + attempts + ", receivedAt=" + receivedAt + ", processedAt="
+            + processedAt + "]";
+    }
+}
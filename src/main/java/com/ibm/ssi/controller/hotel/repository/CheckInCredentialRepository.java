@@ -16,9 +16,6 @@
 
 package com.ibm.ssi.controller.hotel.repository;
 
-import java.util.List;
-import java.util.Optional;
-
 import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -26,8 +23,4 @@ import org.springframework.stereotype.Repository;
 
 @Repository
 public interface CheckInCredentialRepository extends MongoRepository<CheckInCredential, String> {
-
-    List<CheckInCredential> findByHotelIdAndDeskIdAndSendDateIsNotNullOrderByScanDateAsc(String hotelId, String deskId);
-
-    Optional<CheckInCredential> findOneByPresentationExchangeId(String presentationExchangeId);
 }
@@ -18,46 +18,65 @@ package com.ibm.ssi.controller.hotel.repository;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
+/**
+ * Keeps the emitters of the local JVM indexed by their topic ({@code hotelId:deskId}), so that looking up and
+ * removing emitters only touches the subscribers of a single desk.
+ */
 @Repository
 public class InMemoryEmitterRepository implements EmitterRepository {
 
     private static final Logger LOG = LoggerFactory.getLogger(InMemoryEmitterRepository.class);
 
-    private final Map<String, Pair<String, SseEmitter>> emitterMap = new ConcurrentHashMap<>();
+    // topic -> (uuid -> emitter)
+    private final Map<String, Map<String, SseEmitter>> emittersByTopic = new ConcurrentHashMap<>();
+
+    // uuid -> topic
+    private final Map<String, String> topicsByUuid = new ConcurrentHashMap<>();
 
     @Override
     public void addEmitter(String uuid, String hotelId, String deskId, SseEmitter emitter) {
-        LOG.debug("Adding emitter for key {} and topic {}", uuid, getTopic(hotelId, deskId));
-        emitterMap.put(uuid, Pair.of(getTopic(hotelId, deskId), emitter));
+        String topic = getTopic(hotelId, deskId);
+        LOG.debug("Adding emitter for key {} and topic {}", uuid, topic);
+
+        topicsByUuid.put(uuid, topic);
+        // compute() keeps the insert atomic with respect to remove() dropping an empty topic
+        emittersByTopic.compute(topic, (key, emitters) -> {
+            Map<String, SseEmitter> result = emitters != null ? emitters : new ConcurrentHashMap<>();
+            result.put(uuid, emitter);
+            return result;
+        });
     }
 
     @Override
     public void remove(String uuid) {
-        if (emitterMap.containsKey(uuid)) {
-            LOG.debug("Removing emitter for key: {}", uuid);
-            emitterMap.remove(uuid);
-        } else {
+        String topic = topicsByUuid.remove(uuid);
+        if (topic == null) {
             LOG.debug("No emitter to remove for key: {}", uuid);
+            return;
         }
+
+        LOG.debug("Removing emitter for key: {}", uuid);
+        emittersByTopic.computeIfPresent(topic, (key, emitters) -> {
+            emitters.remove(uuid);
+            return emitters.isEmpty() ? null : emitters;
+        });
     }
 
     @Override
     public Map<String, SseEmitter> findByHotelIdAndDeskId(String hotelId, String deskId) {
-        LOG.debug("Finding emitters for topic: {}", getTopic(hotelId, deskId));
-        String topic = getTopic(hotelId, deskId);
+        Map<String, SseEmitter> emitters = emittersByTopic.get(getTopic(hotelId, deskId));
+        if (emitters == null) {
+            return Collections.emptyMap();
+        }
 
-        return this.emitterMap.entrySet()
-            .stream()
-            .filter(entry -> entry.getValue().getFirst().equals(topic))
-            .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getSecond()));
+        return Collections.unmodifiableMap(emitters);
     }
 
     private static String getTopic(String hotelId, String deskId) {
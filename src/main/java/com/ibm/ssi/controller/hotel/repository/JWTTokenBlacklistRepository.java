@@ -1,13 +1,16 @@
 package com.ibm.ssi.controller.hotel.repository;
 
+import java.util.Date;
 import java.util.List;
 
-import com.ibm.ssi.controller.hotel.service.dto.JWTTokenDTO;
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
 
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface JWTTokenBlacklistRepository extends MongoRepository<JWTTokenDTO, String> {
-  List<JWTTokenDTO> findByToken(String token);
+public interface JWTTokenBlacklistRepository extends MongoRepository<BlacklistedJWTToken, String> {
+  List<BlacklistedJWTToken> findByExpiresAtGreaterThanEqual(Date expiresAt);
+
+  List<BlacklistedJWTToken> findByCreatedAtGreaterThanEqual(Date createdAt);
 }
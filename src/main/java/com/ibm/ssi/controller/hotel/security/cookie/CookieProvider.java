@@ -16,18 +16,13 @@
 
 package com.ibm.ssi.controller.hotel.security.cookie;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
@@ -35,68 +30,79 @@ import javax.xml.bind.DatatypeConverter;
 
 import com.ibm.ssi.controller.hotel.service.exceptions.InvalidCookieException;
 
-import io.jsonwebtoken.JwtException;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-
+/**
+ * Binds a JWT token to the browser it was issued to: the token holds the SHA-512 hash of a random fingerprint, the
+ * fingerprint itself is only sent in a hardened cookie.
+ */
 @Component
 public class CookieProvider {
-    private final Logger log = LoggerFactory.getLogger(CookieProvider.class);
+
+    public static final String FINGERPRINT_COOKIE = "Secure-Fgp";
+
+    // a MessageDigest is not thread-safe, creating one per request is costly
+    private static final ThreadLocal<MessageDigest> SHA_512 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-512
+            throw new IllegalStateException(e);
+        }
+    });
 
     private SecureRandom secureRandom = new SecureRandom();
 
     public CookieProvider() {}
 
-    public String resolveCookieFingerprint() {
+    /**
+     * @return a new random fingerprint, to be sent by {@link #resolveCookieFingerprint(String)} and hashed into the
+     * token by {@link #resolveUserFingerprintHash(String)}.
+     */
+    public String generateUserFingerprint() {
         byte[] randomFgp = new byte[50];
         secureRandom.nextBytes(randomFgp);
-        String userFingerprint = DatatypeConverter.printHexBinary(randomFgp);
-        String fingerprintCookie = "Secure-Fgp=" + userFingerprint + "; SameSite=Strict; HttpOnly; Secure; Path=/";
 
-        return fingerprintCookie;
+        return DatatypeConverter.printHexBinary(randomFgp);
     }
 
-    public String resolveUserFingerprintHash(String userFingerprint) throws UnsupportedEncodingException, NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-512");
-        byte[] userFingerprintDigest = digest.digest(userFingerprint.getBytes("utf-8"));
-        String userFingerprintHash = DatatypeConverter.printHexBinary(userFingerprintDigest);
-
-        return userFingerprintHash;
+    /**
+     * @return the value of the Set-Cookie header sending the fingerprint.
+     */
+    public String resolveCookieFingerprint(String userFingerprint) {
+        return FINGERPRINT_COOKIE + "=" + userFingerprint + "; SameSite=Strict; HttpOnly; Secure; Path=/";
     }
 
-    public boolean validateCookie(HttpServletRequest request, String authToken) throws NoSuchAlgorithmException, UnsupportedEncodingException, InvalidCookieException {
-        String userFingerprint = null;
+    public String resolveUserFingerprintHash(String userFingerprint) {
+        byte[] userFingerprintDigest = SHA_512.get().digest(userFingerprint.getBytes(StandardCharsets.UTF_8));
 
-        if (request.getCookies() != null && request.getCookies().length > 0) {
-            List<Cookie> cookies = Arrays.stream(request.getCookies()).collect(Collectors.toList());
-            Optional<Cookie> cookie = cookies.stream().filter(c -> "Secure-Fgp".equals(c.getName())).findFirst();
+        return DatatypeConverter.printHexBinary(userFingerprintDigest);
+    }
 
-            if (cookie.isPresent()) {
-                userFingerprint = cookie.get().getValue();
-            }
-        } else {
+    /**
+     * Checks the fingerprint cookie of the request against the fingerprint hash of the token.
+     *
+     * @param userFingerprintHash the {@code userFingerprint} claim of the verified token.
+     * @return whether the request holds the fingerprint the token was issued for.
+     * @throws InvalidCookieException if the request holds no cookies at all.
+     */
+    public boolean validateCookie(HttpServletRequest request, String userFingerprintHash) throws InvalidCookieException {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null || cookies.length == 0) {
             throw new InvalidCookieException();
         }
 
-        try {
-            String userFingerprintHash = resolveUserFingerprintHash(userFingerprint);
-            
-            Jwts
-            .parserBuilder()
-            .setSigningKey(userFingerprintHash)
-            .require("HS512", SignatureAlgorithm.HS512)
-            .require("userFingerprint", userFingerprintHash)
-            .build();
-
-            return true;
-        } catch (NoSuchAlgorithmException e) {
-            log.error("No such algorithm.", e);
-        } catch (JwtException e) {
-            log.error("Invalid JWT token.", e);
-        } catch (IllegalArgumentException e) {
-            log.error("Invalid JWT fingerprint trace.", e);
+        String userFingerprint = null;
+        for (Cookie cookie : cookies) {
+            if (FINGERPRINT_COOKIE.equals(cookie.getName())) {
+                userFingerprint = cookie.getValue();
+                break;
+            }
+        }
+        if (userFingerprint == null || !StringUtils.hasText(userFingerprintHash)) {
+            return false;
         }
 
-        return false;
+        // constant-time comparison, the time taken must not reveal how much of the hash matches
+        return MessageDigest.isEqual(resolveUserFingerprintHash(userFingerprint).getBytes(StandardCharsets.US_ASCII),
+            userFingerprintHash.getBytes(StandardCharsets.US_ASCII));
     }
 }
@@ -33,7 +33,6 @@ import com.ibm.ssi.controller.hotel.security.cookie.CookieProvider;
 import com.ibm.ssi.controller.hotel.service.exceptions.InvalidCookieException;
 
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 
 /**
  * Filters incoming requests and installs a Spring Security principal if a header corresponding to a valid user is
@@ -62,15 +61,11 @@ public class JWTFilter extends GenericFilterBean {
         String jwt = resolveToken(httpServletRequest);
 
         try {
-            if (StringUtils.hasText(jwt) &&
-                this.tokenProvider.validateToken(jwt) &&
-                this.cookieProvider.validateCookie(httpServletRequest, jwt)) {
-                    
-                Authentication authentication = this.tokenProvider.getAuthentication(jwt);
+            Authentication authentication = StringUtils.hasText(jwt) ? this.tokenProvider.authenticate(jwt) : null;
+            if (authentication != null &&
+                this.cookieProvider.validateCookie(httpServletRequest, resolveUserFingerprintHash(authentication))) {
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             }
-        } catch (NoSuchAlgorithmException e) {
-            log.error("No such algorithm.", e);
         } catch(InvalidCookieException e) {
             log.error("Invalid cookie.", e);
         }
@@ -78,6 +73,11 @@ public class JWTFilter extends GenericFilterBean {
         filterChain.doFilter(servletRequest, servletResponse);
     }
 
+    private String resolveUserFingerprintHash(Authentication authentication) {
+        Object principal = authentication.getPrincipal();
+        return principal instanceof JWTUser ? ((JWTUser) principal).getUserFingerprintHash() : null;
+    }
+
     private String resolveToken(HttpServletRequest request) {
         String bearerToken = request.getHeader(AUTHORIZATION_HEADER);
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
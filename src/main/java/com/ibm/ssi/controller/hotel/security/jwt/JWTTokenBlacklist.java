@@ -0,0 +1,178 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
+import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory copy of the blacklisted JWT tokens, so checking a token does not query MongoDB.
+ * <p>
+ * The tokens are kept as SHA-256 digests together with their expiration. Tokens blacklisted on this node are added
+ * immediately, tokens blacklisted on other nodes are loaded by the periodic refresh. An entry is evicted once its
+ * token expired, the signature check rejects the token from then on anyway.
+ */
+@Component
+public class JWTTokenBlacklist {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JWTTokenBlacklist.class);
+
+    // tokens inserted by other nodes shortly before the last refresh may become visible late
+    private static final long REFRESH_OVERLAP = 60000;
+
+    private final JWTTokenBlacklistRepository jwtTokenBlacklistRepository;
+
+    // digest of the token -> expiration of the token in milliseconds
+    private final Map<String, Long> expirations = new ConcurrentHashMap<>();
+
+    private volatile long refreshedAt;
+
+    public JWTTokenBlacklist(JWTTokenBlacklistRepository jwtTokenBlacklistRepository, MeterRegistry meterRegistry) {
+        this.jwtTokenBlacklistRepository = jwtTokenBlacklistRepository;
+
+        Gauge.builder("hotel.controller.jwt.blacklist.size", expirations, Map::size)
+            .description("Number of blacklisted JWT tokens which did not expire yet")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Loads the blacklisted tokens which did not expire yet.
+     */
+    @PostConstruct
+    public void init() {
+        long now = System.currentTimeMillis();
+        put(jwtTokenBlacklistRepository.findByExpiresAtGreaterThanEqual(new Date(now)), now);
+        refreshedAt = now;
+    }
+
+    /**
+     * Loads the tokens blacklisted since the last refresh and evicts the expired ones.
+     */
+    @Scheduled(initialDelayString = "${ssibk.hotel.controller.jwt-blacklist.refresh-interval:5000}",
+        fixedDelayString = "${ssibk.hotel.controller.jwt-blacklist.refresh-interval:5000}")
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        try {
+            put(jwtTokenBlacklistRepository.findByCreatedAtGreaterThanEqual(new Date(refreshedAt - REFRESH_OVERLAP)), now);
+            refreshedAt = now;
+        } catch (RuntimeException e) {
+            // the tokens are loaded with the next refresh, until then the known ones are still rejected
+            LOG.warn("Could not refresh the JWT token blacklist: {}", e.toString());
+        }
+        expirations.values().removeIf(expiration -> expiration < now);
+    }
+
+    public boolean isBlacklisted(String token) {
+        return isDigestBlacklisted(digest(token));
+    }
+
+    /**
+     * @param digest the digest of the token as returned by {@link #digest(String)}.
+     */
+    public boolean isDigestBlacklisted(String digest) {
+        Long expiration = expirations.get(digest);
+        return expiration != null && expiration >= System.currentTimeMillis();
+    }
+
+    /**
+     * Creates the blacklist entry of a token, which holds the digest and the expiration of the token.
+     *
+     * @throws IllegalArgumentException if the token has no readable expiration, it would never be evicted.
+     */
+    public BlacklistedJWTToken createEntry(String token) {
+        Date expiration = readExpiration(token);
+        if (expiration == null) {
+            throw new IllegalArgumentException("The JWT token has no expiration");
+        }
+        return new BlacklistedJWTToken(digest(token), expiration);
+    }
+
+    /**
+     * Adds a token blacklisted on this node.
+     */
+    public void add(BlacklistedJWTToken blacklistedToken) {
+        expirations.put(blacklistedToken.getDigest(), blacklistedToken.getExpiresAt().getTime());
+    }
+
+    private void put(List<BlacklistedJWTToken> blacklistedTokens, long now) {
+        for (BlacklistedJWTToken blacklistedToken : blacklistedTokens) {
+            if (blacklistedToken.getExpiresAt() != null && blacklistedToken.getExpiresAt().getTime() >= now) {
+                add(blacklistedToken);
+            }
+        }
+        LOG.debug("Loaded {} blacklisted JWT tokens", blacklistedTokens.size());
+    }
+
+    /**
+     * Reads the expiration of a token without checking its signature: a token with a forged expiration does not pass
+     * the signature check anyway.
+     *
+     * @return the expiration, {@code null} if the token does not contain one.
+     */
+    public static Date readExpiration(String token) {
+        if (token == null || token.lastIndexOf('.') < 0) {
+            return null;
+        }
+
+        Claims claims;
+        try {
+            claims = Jwts.parserBuilder().build()
+                .parseClaimsJwt(token.substring(0, token.lastIndexOf('.') + 1))
+                .getBody();
+        } catch (ExpiredJwtException e) {
+            claims = e.getClaims();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        return claims.getExpiration();
+    }
+
+    /**
+     * @return the Base64 encoded SHA-256 digest of the token.
+     */
+    public static String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
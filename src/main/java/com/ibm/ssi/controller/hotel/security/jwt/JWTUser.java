@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.security.jwt;
+
+import java.util.Collection;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+/**
+ * Principal built from a verified JWT token, it keeps the fingerprint hash the token is bound to.
+ */
+public class JWTUser extends User {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String userFingerprintHash;
+
+    public JWTUser(String username, Collection<? extends GrantedAuthority> authorities, String userFingerprintHash) {
+        super(username, "", authorities);
+        this.userFingerprintHash = userFingerprintHash;
+    }
+
+    public String getUserFingerprintHash() {
+        return userFingerprintHash;
+    }
+}
@@ -18,16 +18,17 @@ package com.ibm.ssi.controller.hotel.security.jwt;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 
-import java.io.UnsupportedEncodingException;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -40,8 +41,10 @@ import io.github.jhipster.config.JHipsterProperties;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 
-import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
 import com.ibm.ssi.controller.hotel.security.cookie.CookieProvider;
 
 @Component
@@ -50,12 +53,22 @@ public class TokenProvider {
     private final Logger log = LoggerFactory.getLogger(TokenProvider.class);
 
     @Autowired
-    private JWTTokenBlacklistRepository jwtTokenBlacklistRepository;
+    private JWTTokenBlacklist jwtTokenBlacklist;
 
     private static final String AUTHORITIES_KEY = "auth";
 
+    private static final String USER_FINGERPRINT_KEY = "userFingerprint";
+
+    // distinct values of the auth claim, they only come from tokens signed by us
+    private static final int MAX_CACHED_AUTHORITIES = 64;
+
+    private final Map<String, List<GrantedAuthority>> authoritiesCache = new ConcurrentHashMap<>();
+
     private Key key;
 
+    // immutable and thread-safe, shared by all requests
+    private JwtParser jwtParser;
+
     private long tokenValidityInMilliseconds;
 
     private long tokenValidityInMillisecondsForRememberMe;
@@ -64,9 +77,40 @@ public class TokenProvider {
 
     private final CookieProvider cookieProvider;
 
-    public TokenProvider(JHipsterProperties jHipsterProperties, CookieProvider cookieProvider) {
+    // digest of the token -> authentication built from the verified token
+    private final Map<String, CachedAuthentication> authenticationCache = new ConcurrentHashMap<>();
+
+    private final int authenticationCacheMaxSize;
+
+    private final long authenticationCacheTtl;
+
+    // time of the last sweep, a full cache is swept at most once per ttl
+    private final AtomicLong lastEviction = new AtomicLong();
+
+    private final Counter authenticationCacheHits;
+
+    private final Counter authenticationCacheMisses;
+
+    public TokenProvider(JHipsterProperties jHipsterProperties, CookieProvider cookieProvider,
+            MeterRegistry meterRegistry,
+            @Value("${ssibk.hotel.controller.jwt-cache.max-size:10000}") int authenticationCacheMaxSize,
+            @Value("${ssibk.hotel.controller.jwt-cache.ttl:60000}") long authenticationCacheTtl) {
         this.jHipsterProperties = jHipsterProperties;
         this.cookieProvider = cookieProvider;
+        this.authenticationCacheMaxSize = authenticationCacheMaxSize;
+        this.authenticationCacheTtl = authenticationCacheTtl;
+
+        Gauge.builder("hotel.controller.jwt.cache.size", authenticationCache, Map::size)
+            .description("Number of verified JWT tokens whose authentication is cached")
+            .register(meterRegistry);
+        this.authenticationCacheHits = Counter.builder("hotel.controller.jwt.cache.requests")
+            .description("Number of JWT tokens authenticated from the cache or verified")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.authenticationCacheMisses = Counter.builder("hotel.controller.jwt.cache.requests")
+            .description("Number of JWT tokens authenticated from the cache or verified")
+            .tag("result", "miss")
+            .register(meterRegistry);
     }
 
     @PostConstruct
@@ -82,6 +126,7 @@ public class TokenProvider {
             keyBytes = Decoders.BASE64.decode(jHipsterProperties.getSecurity().getAuthentication().getJwt().getBase64Secret());
         }
         this.key = Keys.hmacShaKeyFor(keyBytes);
+        this.jwtParser = Jwts.parserBuilder().setSigningKey(key).build();
         this.tokenValidityInMilliseconds =
             1000 * jHipsterProperties.getSecurity().getAuthentication().getJwt()
                 .getTokenValidityInSeconds();
@@ -90,15 +135,11 @@ public class TokenProvider {
                 .getTokenValidityInSecondsForRememberMe();
     }
 
-    public String createToken(Authentication authentication, boolean rememberMe) throws UnsupportedEncodingException {
-        String userFingerprintHash = "";
-        
-        try {
-            String userFingerprint = cookieProvider.resolveCookieFingerprint();
-            userFingerprintHash = cookieProvider.resolveUserFingerprintHash(userFingerprint);
-        } catch (NoSuchAlgorithmException e) {
-            log.error("No such algorithm", e);
-        }
+    /**
+     * @param userFingerprint the fingerprint sent to the user in the cookie, the token only holds its hash.
+     */
+    public String createToken(Authentication authentication, boolean rememberMe, String userFingerprint) {
+        String userFingerprintHash = cookieProvider.resolveUserFingerprintHash(userFingerprint);
 
         String authorities = authentication.getAuthorities().stream()
             .map(GrantedAuthority::getAuthority)
@@ -116,49 +157,150 @@ public class TokenProvider {
         headerClaims.put("typ", "JWT");
 
         return Jwts.builder()
+            // tokens issued for the same user within a second differ, so revoking one does not revoke the others
+            .setId(UUID.randomUUID().toString())
             .setSubject(authentication.getName())
             .claim(AUTHORITIES_KEY, authorities)
-            .claim("userFingerprint", userFingerprintHash)
+            .claim(USER_FINGERPRINT_KEY, userFingerprintHash)
             .setHeader(headerClaims)
             .signWith(key, SignatureAlgorithm.HS512)
             .setExpiration(validity)
             .compact();
     }
 
-    public Authentication getAuthentication(String token) {
-        Claims claims = Jwts.parserBuilder()
-            .setSigningKey(key)
-            .build()
-            .parseClaimsJws(token)
-            .getBody();
-
-        Collection<? extends GrantedAuthority> authorities =
-            Arrays.stream(claims.get(AUTHORITIES_KEY).toString().split(","))
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+    /**
+     * Verifies the token and builds the authentication of its user, the token is parsed only once.
+     * <p>
+     * The authentication of a verified token is cached for the configured time, at most until the token expires. A
+     * cached token is still checked against the blacklist, so blacklisting it takes effect immediately.
+     *
+     * @param token the JWT token.
+     * @return the authentication, {@code null} if the token is invalid or blacklisted.
+     */
+    public Authentication authenticate(String token) {
+        if (authenticationCacheMaxSize <= 0) {
+            Claims claims = verify(token, null);
+            return claims != null ? toAuthentication(claims, token) : null;
+        }
 
-        User principal = new User(claims.getSubject(), "", authorities);
+        String digest = JWTTokenBlacklist.digest(token);
+        long now = System.currentTimeMillis();
+        CachedAuthentication cached = authenticationCache.get(digest);
+        if (cached != null) {
+            if (cached.expiresAt > now && !jwtTokenBlacklist.isDigestBlacklisted(digest)) {
+                authenticationCacheHits.increment();
+                return cached.authentication;
+            }
+            authenticationCache.remove(digest, cached);
+        }
+        authenticationCacheMisses.increment();
 
-        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
+        Claims claims = verify(token, digest);
+        if (claims == null) {
+            return null;
+        }
+        Authentication authentication = toAuthentication(claims, token);
+        cache(digest, authentication, claims.getExpiration(), now);
+
+        return authentication;
+    }
+
+    public Authentication getAuthentication(String token) {
+        return toAuthentication(jwtParser.parseClaimsJws(token).getBody(), token);
     }
 
     public boolean validateToken(String authToken) {
-        if (jwtTokenBlacklistRepository.findByToken(authToken).size() > 0) {
-            log.info("JWT Token is Blacklisted");
+        return verify(authToken, null) != null;
+    }
 
-            return false;
+    /**
+     * Evicts the cached authentications of expired tokens.
+     */
+    @Scheduled(initialDelayString = "${ssibk.hotel.controller.jwt-cache.ttl:60000}",
+        fixedDelayString = "${ssibk.hotel.controller.jwt-cache.ttl:60000}")
+    public void evictExpiredAuthentications() {
+        long now = System.currentTimeMillis();
+        lastEviction.set(now);
+        evictExpiredAuthentications(now);
+    }
+
+    private void evictExpiredAuthentications(long now) {
+        authenticationCache.values().removeIf(cached -> cached.expiresAt <= now);
+    }
+
+    private void cache(String digest, Authentication authentication, Date expiration, long now) {
+        long expiresAt = now + authenticationCacheTtl;
+        if (expiration != null) {
+            expiresAt = Math.min(expiresAt, expiration.getTime());
         }
-        
-        try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(authToken);
+        if (authenticationCache.size() >= authenticationCacheMaxSize) {
+            long last = lastEviction.get();
+            if (now - last >= authenticationCacheTtl && lastEviction.compareAndSet(last, now)) {
+                evictExpiredAuthentications(now);
+            }
+            if (authenticationCache.size() >= authenticationCacheMaxSize) {
+                // the token is verified again next time, rather than evicting the authentication of another token
+                return;
+            }
+        }
+        authenticationCache.put(digest, new CachedAuthentication(authentication, expiresAt));
+    }
 
-            return true;
+    /**
+     * @param digest the digest of the token, {@code null} to compute it if needed.
+     */
+    private Claims verify(String token, String digest) {
+        Claims claims;
+        try {
+            claims = jwtParser.parseClaimsJws(token).getBody();
         } catch (JwtException e) {
             log.info("Invalid JWT token.", e);
+            return null;
         } catch(IllegalArgumentException e) {
             log.trace("Invalid JWT token trace.", e);
+            return null;
+        }
+
+        // only tokens with a valid signature are looked up, the blacklist is kept in memory
+        if (jwtTokenBlacklist.isDigestBlacklisted(digest != null ? digest : JWTTokenBlacklist.digest(token))) {
+            log.info("JWT Token is Blacklisted");
+
+            return null;
+        }
+
+        return claims;
+    }
+
+    private Authentication toAuthentication(Claims claims, String token) {
+        List<GrantedAuthority> authorities = resolveAuthorities(claims.get(AUTHORITIES_KEY).toString());
+        User principal = new JWTUser(claims.getSubject(), authorities, claims.get(USER_FINGERPRINT_KEY, String.class));
+
+        return new UsernamePasswordAuthenticationToken(principal, token, authorities);
+    }
+
+    private List<GrantedAuthority> resolveAuthorities(String authoritiesClaim) {
+        List<GrantedAuthority> authorities = authoritiesCache.get(authoritiesClaim);
+        if (authorities == null) {
+            authorities = Collections.unmodifiableList(Arrays.stream(authoritiesClaim.split(","))
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList()));
+            if (authoritiesCache.size() < MAX_CACHED_AUTHORITIES) {
+                authoritiesCache.putIfAbsent(authoritiesClaim, authorities);
+            }
         }
 
-        return false;
+        return authorities;
+    }
+
+    private static final class CachedAuthentication {
+
+        private final Authentication authentication;
+
+        private final long expiresAt;
+
+        private CachedAuthentication(Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
     }
 }
@@ -16,19 +16,27 @@
 
 package com.ibm.ssi.controller.hotel.service;
 
-import java.util.List;
 import java.util.Optional;
 
 import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
 import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialDTO;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialSummaryPageDTO;
 import com.ibm.ssi.controller.hotel.service.dto.CorporateIdDTO;
 import com.ibm.ssi.controller.hotel.service.dto.MasterIdDTO;
 import com.ibm.ssi.controller.hotel.service.exceptions.CannotFindMyHotelException;
 import com.ibm.ssi.controller.hotel.service.exceptions.CheckinCredentialNotFoundException;
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidCursorException;
 
 public interface CheckInCredentialService {
 
-    List<CheckInCredentialDTO> getDeskCredentials(String deskId) throws CannotFindMyHotelException;
+    /**
+     * Gets a page of the sent check-in credentials of a desk of my hotel, ordered by scan date.
+     *
+     * @param cursor the cursor of the page, {@code null} for the first page.
+     * @param size   the maximum number of check-in credentials of the page.
+     */
+    CheckInCredentialSummaryPageDTO getDeskCredentials(String deskId, String cursor, int size)
+        throws CannotFindMyHotelException, InvalidCursorException;
 
     void createCheckInCredential(String hotelId, String deskId, String presentationExchangeId);
 
@@ -20,6 +20,6 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 public interface EmitterService {
 
-    SseEmitter createEmitter(String hotelId, String deskId);
+    SseEmitter createEmitter(String hotelId, String deskId, String lastEventId);
 
 }
@@ -16,9 +16,35 @@
 
 package com.ibm.ssi.controller.hotel.service;
 
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialChangeDTO;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
 public interface NotificationService {
 
     String NEW_CHECKIN_CREDENTIAL = "NEW_CHECKIN_CREDENTIAL";
 
-    void sendNotificationAboutNewCheckinCredentials(String hotelId, String deskId);
+    /**
+     * Sent to a reconnecting client whose missed events cannot be replayed, the client has to reload its list.
+     */
+    String RESYNC = "RESYNC";
+
+    /**
+     * Registers the emitter for the desk and replays the events sent after {@code lastEventId}.
+     *
+     * @param lastEventId the value of the {@code Last-Event-ID} header, may be {@code null}.
+     */
+    void subscribe(String uuid, String hotelId, String deskId, SseEmitter emitter, String lastEventId);
+
+    void sendNotificationAboutCheckinCredential(CheckInCredential checkInCredential);
+
+    void sendNotificationAboutRemovedCheckinCredential(String hotelId, String deskId, String id);
+
+    void sendNotificationAboutExpiredCheckinCredential(String hotelId, String deskId, String id);
+
+    /**
+     * Sends the change to the emitters connected to this node, independent of the configured fan-out.
+     */
+    void notifyLocalEmitters(String hotelId, String deskId, CheckInCredentialChangeDTO change);
 }
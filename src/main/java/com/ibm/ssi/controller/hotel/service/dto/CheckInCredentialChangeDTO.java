@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.dto;
+
+import java.util.Date;
+
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+
+/**
+ * Compact description of a changed check-in credential, sent with the desk events.
+ * <p>
+ * The event stream is not authenticated, so it must never carry personal data. Clients load the details
+ * of a credential via {@code GET /api/checkin-credentials/{id}}.
+ */
+public class CheckInCredentialChangeDTO {
+
+    public enum State {
+        /** the guest scanned the QR code, no presentation was received yet */
+        SCANNED,
+        /** the presentation was received and stored */
+        RECEIVED,
+        /** the credential was deleted, e.g. after its data was sent to the PMS */
+        REMOVED,
+        /** the credential was deleted because it was not completed or not sent to the PMS in time */
+        EXPIRED
+    }
+
+    private String id;
+
+    private State state;
+
+    private boolean valid;
+
+    private Date scanDate;
+
+    public CheckInCredentialChangeDTO() {
+    }
+
+    public CheckInCredentialChangeDTO(CheckInCredential checkInCredential) {
+        this.id = checkInCredential.getId();
+        this.state = checkInCredential.getSendDate() == null ? State.SCANNED : State.RECEIVED;
+        this.valid = checkInCredential.isValid();
+        this.scanDate = checkInCredential.getScanDate();
+    }
+
+    public CheckInCredentialChangeDTO(String id, State state) {
+        this.id = id;
+        this.state = state;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public void setValid(boolean valid) {
+        this.valid = valid;
+    }
+
+    public Date getScanDate() {
+        return scanDate;
+    }
+
+    public void setScanDate(Date scanDate) {
+        this.scanDate = scanDate;
+    }
+
+    @Override
+    public String toString() {
+        return "CheckInCredentialChangeDTO [id=" + id + ", scanDate=" + scanDate + ", state=" + state + ", valid="
+                + valid + "]";
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.dto;
+
+import java.util.List;
+
+/**
+ * Payload of the events sent to the desk clients subscribed to {@code /api/checkin-credentials/subscribe}.
+ * <p>
+ * The version is a sequence number per desk. Clients apply the changes to their local list and only reload the
+ * full list via {@code GET /api/checkin-credentials} when they detect a gap in the sequence.
+ */
+public class CheckInCredentialEventDTO {
+
+    private long version;
+
+    private List<CheckInCredentialChangeDTO> changes;
+
+    public CheckInCredentialEventDTO() {
+    }
+
+    public CheckInCredentialEventDTO(long version, List<CheckInCredentialChangeDTO> changes) {
+        this.version = version;
+        this.changes = changes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<CheckInCredentialChangeDTO> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<CheckInCredentialChangeDTO> changes) {
+        this.changes = changes;
+    }
+
+    @Override
+    public String toString() {
+        return "CheckInCredentialEventDTO [changes=" + changes + ", version=" + version + "]";
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.ssi.controller.hotel.service.dto;
+
+import java.util.Date;
+
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+
+/**
+ * Entry of the desk list, the details of a check-in credential are loaded via
+ * {@code GET /api/checkin-credentials/{id}}.
+ */
+public class CheckInCredentialSummaryDTO {
+
+    private String id;
+
+    private String firstName;
+
+    private String familyName;
+
+    private Date scanDate;
+
+    private boolean valid;
+
+    public CheckInCredentialSummaryDTO() {
+    }
+
+    public CheckInCredentialSummaryDTO(CheckInCredential checkInCredential) {
+        this.id = checkInCredential.getId();
+        this.scanDate = checkInCredential.getScanDate();
+        this.valid = checkInCredential.isValid();
+        if (checkInCredential.getMasterId() != null) {
+            this.firstName = checkInCredential.getMasterId().getFirstName();
+            this.familyName = checkInCredential.getMasterId().getFamilyName();
+        } else if (checkInCredential.getCorporateId() != null) {
+            this.firstName = checkInCredential.getCorporateId().getFirstName();
+            this.familyName = checkInCredential.getCorporateId().getFamilyName();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getFamilyName() {
+        return familyName;
+    }
+
+    public void setFamilyName(String familyName) {
+        this.familyName = familyName;
+    }
+
+    public Date getScanDate() {
+        return scanDate;
+    }
+
+    public void setScanDate(Date scanDate) {
+        this.scanDate = scanDate;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public void setValid(boolean valid) {
+        this.valid = valid;
+    }
+
+    @Override
+    public String toString() {
+        // the name is personal data and not logged
+        return "CheckInCredentialSummaryDTO [id=" + id + ", scanDate=" + scanDate + ", valid=" + valid + "]";
+    }
+}
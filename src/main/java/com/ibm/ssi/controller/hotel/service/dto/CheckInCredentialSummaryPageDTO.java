@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.ssi.controller.hotel.service.dto;
+
+import java.util.List;
+
+/**
+ * A page of the desk list, ordered by scan date.
+ */
+public class CheckInCredentialSummaryPageDTO {
+
+    private final List<CheckInCredentialSummaryDTO> content;
+
+    private final String nextCursor;
+
+    /**
+     * @param content    the check-in credentials of the page.
+     * @param nextCursor the cursor of the next page, {@code null} if this is the last page.
+     */
+    public CheckInCredentialSummaryPageDTO(List<CheckInCredentialSummaryDTO> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<CheckInCredentialSummaryDTO> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "CheckInCredentialSummaryPageDTO [content=" + content + ", nextCursor=" + nextCursor + "]";
+    }
+}
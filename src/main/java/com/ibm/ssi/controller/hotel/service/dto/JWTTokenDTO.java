@@ -6,9 +6,6 @@ import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
-import org.springframework.data.mongodb.core.mapping.Document;
-
-@Document(collection="JWTTokenBlacklist")
 public class JWTTokenDTO {
   @NotNull
   @NotEmpty
@@ -17,6 +17,7 @@
 package com.ibm.ssi.controller.hotel.service.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.ibm.ssi.controller.hotel.client.model.Presentation;
 
 public class WebhookPresentProofDTO {
 
@@ -41,10 +42,11 @@ public class WebhookPresentProofDTO {
 
     @JsonProperty("presentation_request")
     private String presentationRequest;
+    */
 
+    // only sent once the presentation is received, contains the revealed attributes
     @JsonProperty("presentation")
-    private String presentation;
-    */
+    private Presentation presentation;
 
     @JsonProperty("verified")
     private String verified;
@@ -76,6 +78,10 @@ public class WebhookPresentProofDTO {
         return verified;
     }
 
+    public Presentation getPresentation() {
+        return presentation;
+    }
+
     @Override
     public String toString() {
         return "WebhookPresentProofDTO [connectionId=" + connectionId + ", initiator=" + initiator
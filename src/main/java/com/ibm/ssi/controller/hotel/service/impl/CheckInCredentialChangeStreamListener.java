@@ -0,0 +1,229 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import com.ibm.ssi.controller.hotel.service.NotificationService;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialChangeDTO;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+/**
+ * Notifies the emitters connected to this node about every change of the {@code checkInCredential} collection, no
+ * matter which node made the change.
+ * <p>
+ * Only active with {@code ssibk.hotel.controller.events.fan-out=CHANGE_STREAM}, which requires MongoDB to run as a
+ * replica set. Delete events only contain the id of the credential, so the hotel and desk of every credential are
+ * loaded from the collection whenever the stream is watched and remembered until the credential is deleted.
+ */
+@Service
+@ConditionalOnProperty(name = "ssibk.hotel.controller.events.fan-out", havingValue = "CHANGE_STREAM")
+public class CheckInCredentialChangeStreamListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckInCredentialChangeStreamListener.class);
+
+    private static final String COLLECTION = "checkInCredential";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final NotificationService notificationService;
+
+    private final TaskScheduler taskScheduler;
+
+    private final long reconnectDelay;
+
+    // credential id -> desk of the credential, needed to route delete events
+    private final Map<String, Desk> desks = new ConcurrentHashMap<>();
+
+    private MessageListenerContainer container;
+
+    private ScheduledFuture<?> watchdog;
+
+    private volatile Subscription subscription;
+
+    private volatile BsonDocument resumeToken;
+
+    private volatile int failedAttempts;
+
+    public CheckInCredentialChangeStreamListener(MongoTemplate mongoTemplate, NotificationService notificationService,
+            TaskScheduler taskScheduler,
+            @Value("${ssibk.hotel.controller.events.change-stream.reconnect-delay:5000}") long reconnectDelay) {
+        this.mongoTemplate = mongoTemplate;
+        this.notificationService = notificationService;
+        this.taskScheduler = taskScheduler;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    @PostConstruct
+    public void start() {
+        container = new DefaultMessageListenerContainer(mongoTemplate,
+            new SimpleAsyncTaskExecutor("hotel-controller-change-stream-"), this::handleError);
+        container.start();
+        subscribe();
+        watchdog = taskScheduler.scheduleWithFixedDelay(this::resubscribeIfInactive, Duration.ofMillis(reconnectDelay));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    /**
+     * Whether the change stream is currently watched.
+     */
+    public boolean isActive() {
+        Subscription current = subscription;
+        return current != null && current.isActive();
+    }
+
+    void onMessage(Message<ChangeStreamDocument<Document>, CheckInCredential> message) {
+        ChangeStreamDocument<Document> change = message.getRaw();
+        resumeToken = change.getResumeToken();
+        failedAttempts = 0;
+
+        switch (change.getOperationType()) {
+            case INSERT:
+            case UPDATE:
+            case REPLACE:
+                CheckInCredential checkInCredential = message.getBody();
+                if (checkInCredential == null) {
+                    // the credential was deleted before the update could be looked up
+                    return;
+                }
+                desks.put(checkInCredential.getId(), new Desk(checkInCredential.getHotelId(), checkInCredential.getDeskId()));
+                notificationService.notifyLocalEmitters(checkInCredential.getHotelId(), checkInCredential.getDeskId(),
+                    new CheckInCredentialChangeDTO(checkInCredential));
+                break;
+            case DELETE:
+                String id = toId(change.getDocumentKey().get("_id"));
+                Desk desk = desks.remove(id);
+                if (desk == null) {
+                    LOG.debug("Ignoring deletion of unknown checkin-credential {}", id);
+                    return;
+                }
+                notificationService.notifyLocalEmitters(desk.hotelId, desk.deskId,
+                    new CheckInCredentialChangeDTO(id, CheckInCredentialChangeDTO.State.REMOVED));
+                break;
+            default:
+                LOG.debug("Ignoring change stream event {}", change.getOperationType());
+        }
+    }
+
+    private void subscribe() {
+        ChangeStreamRequest.ChangeStreamRequestBuilder<CheckInCredential> request = ChangeStreamRequest
+            .builder(this::onMessage)
+            .collection(COLLECTION)
+            .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        // a token that cannot be resumed from is dropped after the second failed attempt, a single failure may be transient
+        if (resumeToken != null && failedAttempts <= 1) {
+            request.resumeAfter(resumeToken);
+        }
+        subscription = container.register(request.build(), CheckInCredential.class);
+        LOG.info("Watching the {} collection for changes", COLLECTION);
+        loadDesks();
+    }
+
+    /**
+     * Remembers the desk of every check-in credential, credentials deleted while the stream was not watched are
+     * forgotten. Loaded after subscribing, so no credential inserted in the meantime is missed.
+     */
+    void loadDesks() {
+        // credentials added by the change stream during the load are not in this snapshot and therefore kept
+        Set<String> deleted = new HashSet<>(desks.keySet());
+        Query query = new Query();
+        query.fields().include("hotelId").include("deskId");
+        try (CloseableIterator<CheckInCredential> checkInCredentials = mongoTemplate.stream(query, CheckInCredential.class)) {
+            while (checkInCredentials.hasNext()) {
+                CheckInCredential checkInCredential = checkInCredentials.next();
+                deleted.remove(checkInCredential.getId());
+                desks.put(checkInCredential.getId(), new Desk(checkInCredential.getHotelId(), checkInCredential.getDeskId()));
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not load the desks of the {} collection: {}", COLLECTION, e.toString());
+            return;
+        }
+        desks.keySet().removeAll(deleted);
+    }
+
+    private void resubscribeIfInactive() {
+        Subscription current = subscription;
+        if (current == null || current.isActive()) {
+            return;
+        }
+        LOG.warn("Change stream on {} is not active, resubscribing", COLLECTION);
+        container.remove(current);
+        subscribe();
+    }
+
+    private void handleError(Throwable t) {
+        failedAttempts++;
+        LOG.warn("Error while watching the {} collection: {}", COLLECTION, t.toString());
+    }
+
+    private static String toId(BsonValue id) {
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    private static final class Desk {
+
+        private final String hotelId;
+
+        private final String deskId;
+
+        private Desk(String hotelId, String deskId) {
+            this.hotelId = hotelId;
+            this.deskId = deskId;
+        }
+    }
+}
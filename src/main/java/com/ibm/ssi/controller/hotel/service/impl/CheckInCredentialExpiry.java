@@ -0,0 +1,141 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import com.ibm.ssi.controller.hotel.service.NotificationService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Deletes check-in credentials which were abandoned, so they neither slow down the desk queries nor keep personal
+ * data longer than needed.
+ * <p>
+ * A check-in credential expires if the guest scanned the QR code but did not complete the proof within the unsent
+ * TTL, or if its data was not retrieved by the PMS within the retention after the proof was completed. The desk is
+ * notified about every expired check-in credential. A TTL or retention of 0 disables the respective expiry.
+ */
+@Service
+public class CheckInCredentialExpiry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckInCredentialExpiry.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final NotificationService notificationService;
+
+    private final ProofRecordCleaner proofRecordCleaner;
+
+    private final long unsentTtl;
+
+    private final long retention;
+
+    private final int batchSize;
+
+    private final Counter expiredUnsent;
+
+    private final Counter expiredSent;
+
+    public CheckInCredentialExpiry(MongoTemplate mongoTemplate, NotificationService notificationService,
+            ProofRecordCleaner proofRecordCleaner, MeterRegistry meterRegistry,
+            @Value("${ssibk.hotel.controller.checkin-credential-expiry.unsent-ttl:900000}") long unsentTtl,
+            @Value("${ssibk.hotel.controller.checkin-credential-expiry.retention:86400000}") long retention,
+            @Value("${ssibk.hotel.controller.checkin-credential-expiry.batch-size:100}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.notificationService = notificationService;
+        this.proofRecordCleaner = proofRecordCleaner;
+        this.unsentTtl = unsentTtl;
+        this.retention = retention;
+        this.batchSize = batchSize;
+
+        this.expiredUnsent = Counter.builder("hotel.controller.checkin.credential.expired")
+            .description("Number of check-in credentials deleted because they were abandoned")
+            .tag("state", "unsent")
+            .register(meterRegistry);
+        this.expiredSent = Counter.builder("hotel.controller.checkin.credential.expired")
+            .description("Number of check-in credentials deleted because they were abandoned")
+            .tag("state", "sent")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${ssibk.hotel.controller.checkin-credential-expiry.interval:60000}",
+        fixedDelayString = "${ssibk.hotel.controller.checkin-credential-expiry.interval:60000}")
+    public void expire() {
+        long now = System.currentTimeMillis();
+        try {
+            if (unsentTtl > 0) {
+                // the guest scanned the QR code but never completed the proof
+                int count = expire(Criteria.where("sendDate").exists(false).and("scanDate").lt(new Date(now - unsentTtl)),
+                    "scanDate", true);
+                expiredUnsent.increment(count);
+            }
+            if (retention > 0) {
+                // the proof was completed but the PMS never retrieved the data
+                int count = expire(Criteria.where("sendDate").lt(new Date(now - retention)), "sendDate", false);
+                expiredSent.increment(count);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not expire check-in credentials: {}", e.toString());
+        }
+    }
+
+    /**
+     * Deletes the check-in credentials matching the criteria in batches.
+     *
+     * @return the number of deleted check-in credentials.
+     */
+    private int expire(Criteria criteria, String dateField, boolean deleteProofRecord) {
+        int count = 0;
+        List<CheckInCredential> batch;
+        do {
+            Query candidates = Query.query(criteria).with(Sort.by(dateField)).limit(batchSize);
+            candidates.fields().include("id");
+            batch = mongoTemplate.find(candidates, CheckInCredential.class);
+
+            for (CheckInCredential candidate : batch) {
+                // the criteria are checked again, the check-in credential may have been completed in the meantime
+                CheckInCredential expired = mongoTemplate.findAndRemove(
+                    Query.query(Criteria.where("id").is(candidate.getId()).andOperator(criteria)), CheckInCredential.class);
+                if (expired == null) {
+                    continue;
+                }
+                count++;
+                LOG.debug("Expired checkin-credential {} for hotelId and deskId: {} {}", expired.getId(),
+                    expired.getHotelId(), expired.getDeskId());
+                notificationService.sendNotificationAboutExpiredCheckinCredential(expired.getHotelId(),
+                    expired.getDeskId(), expired.getId());
+                if (deleteProofRecord && expired.getPresentationExchangeId() != null) {
+                    proofRecordCleaner.scheduleDeletion(expired.getPresentationExchangeId());
+                }
+            }
+        } while (batch.size() == batchSize);
+        return count;
+    }
+}
@@ -16,7 +16,9 @@
 
 package com.ibm.ssi.controller.hotel.service.impl;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -28,16 +30,25 @@ import com.ibm.ssi.controller.hotel.service.CheckInCredentialService;
 import com.ibm.ssi.controller.hotel.service.HotelService;
 import com.ibm.ssi.controller.hotel.service.NotificationService;
 import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialDTO;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialSummaryDTO;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialSummaryPageDTO;
 import com.ibm.ssi.controller.hotel.service.dto.CorporateIdDTO;
 import com.ibm.ssi.controller.hotel.service.dto.HotelDTO;
 import com.ibm.ssi.controller.hotel.service.dto.MasterIdDTO;
 import com.ibm.ssi.controller.hotel.service.exceptions.CannotFindMyHotelException;
 import com.ibm.ssi.controller.hotel.service.exceptions.CheckinCredentialNotFoundException;
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidCursorException;
 import com.ibm.ssi.controller.hotel.service.mapper.CheckInCredentialMapper;
 import com.ibm.ssi.controller.hotel.service.mapper.CorporateIdMapper;
 import com.ibm.ssi.controller.hotel.service.mapper.MasterIdMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -57,26 +68,55 @@ public class CheckInCredentialServiceImpl implements CheckInCredentialService {
 
     private final NotificationService notificationService;
 
-    public CheckInCredentialServiceImpl(HotelService hotelService, CheckInCredentialMapper checkInCredentialMapper, MasterIdMapper masterIdMapper, CorporateIdMapper corporateIdMapper, CheckInCredentialRepository checkInCredentialRepository, NotificationService notificationService) {
+    private final MongoTemplate mongoTemplate;
+
+    public CheckInCredentialServiceImpl(HotelService hotelService, CheckInCredentialMapper checkInCredentialMapper, MasterIdMapper masterIdMapper, CorporateIdMapper corporateIdMapper, CheckInCredentialRepository checkInCredentialRepository, NotificationService notificationService, MongoTemplate mongoTemplate) {
         this.hotelService = hotelService;
         this.checkInCredentialMapper = checkInCredentialMapper;
         this.masterIdMapper = masterIdMapper;
         this.corporateIdMapper = corporateIdMapper;
         this.checkInCredentialRepository = checkInCredentialRepository;
         this.notificationService = notificationService;
+        this.mongoTemplate = mongoTemplate;
     }
 
     @Override
-    public List<CheckInCredentialDTO> getDeskCredentials(String deskId) throws CannotFindMyHotelException {
+    public CheckInCredentialSummaryPageDTO getDeskCredentials(String deskId, String cursor, int size)
+        throws CannotFindMyHotelException, InvalidCursorException {
         LOG.debug("Getting the DeskId");
         Optional<HotelDTO> getMyHotel = hotelService.getMyHotel();
         if (!getMyHotel.isPresent()) {
             throw new CannotFindMyHotelException();
         }
-        return checkInCredentialRepository
-            .findByHotelIdAndDeskIdAndSendDateIsNotNullOrderByScanDateAsc(getMyHotel.get().getId(), deskId).stream()
-            .map(checkInCredentialMapper::checkInCredentialToCheckInCredentialDTO)
-            .collect(Collectors.toCollection(ArrayList::new));
+
+        Criteria criteria = Criteria.where("hotelId").is(getMyHotel.get().getId())
+            .and("deskId").is(deskId)
+            // the $exists condition lets MongoDB use the partial index on sent check-in credentials
+            .and("sendDate").exists(true).ne(null);
+        if (cursor != null) {
+            CheckInCredential last = decodeCursor(cursor);
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                Criteria.where("scanDate").gt(last.getScanDate()),
+                Criteria.where("scanDate").is(last.getScanDate()).and("id").gt(last.getId())));
+        }
+
+        // one more than requested tells whether there is a next page
+        Query query = Query.query(criteria)
+            .with(Sort.by("scanDate", "id"))
+            .limit(size + 1);
+        query.fields().include("scanDate").include("valid")
+            .include("masterId.firstName").include("masterId.familyName")
+            .include("corporateId.firstName").include("corporateId.familyName");
+        List<CheckInCredential> checkInCredentials = mongoTemplate.find(query, CheckInCredential.class);
+
+        String nextCursor = null;
+        if (checkInCredentials.size() > size) {
+            checkInCredentials = checkInCredentials.subList(0, size);
+            nextCursor = encodeCursor(checkInCredentials.get(size - 1));
+        }
+        return new CheckInCredentialSummaryPageDTO(checkInCredentials.stream()
+            .map(CheckInCredentialSummaryDTO::new)
+            .collect(Collectors.toCollection(ArrayList::new)), nextCursor);
     }
 
     @Override
@@ -86,52 +126,79 @@ public class CheckInCredentialServiceImpl implements CheckInCredentialService {
         checkInCredential.setScanDate(new Date());
 
         checkInCredentialRepository.save(checkInCredential);
-        notificationService.sendNotificationAboutNewCheckinCredentials(hotelId, deskId);
+        notificationService.sendNotificationAboutCheckinCredential(checkInCredential);
     }
 
     @Override
     public CheckInCredential updateCheckinCredential(String presentationExchangeId, MasterIdDTO masterIdDTO, CorporateIdDTO corporateIdDTO)
         throws CheckinCredentialNotFoundException {
 
-        Optional<CheckInCredential> checkInCredentialOptional = checkInCredentialRepository.findOneByPresentationExchangeId(presentationExchangeId);
-        if (checkInCredentialOptional.isPresent()) {
-            CheckInCredential checkInCredential = checkInCredentialOptional.get();
-            checkInCredential.setCorporateId(corporateIdMapper.corporateIdDTOToCorporateId(corporateIdDTO));
-            checkInCredential.setMasterId(masterIdMapper.masterIdDTOToMasterId(masterIdDTO));
-            checkInCredential.setSendDate(new Date());
+        Update update = new Update()
+            .set("corporateId", corporateIdMapper.corporateIdDTOToCorporateId(corporateIdDTO))
+            .set("masterId", masterIdMapper.masterIdDTOToMasterId(masterIdDTO))
+            .set("sendDate", new Date());
 
-            CheckInCredential updatedCredential = checkInCredentialRepository.save(checkInCredential);
-            notificationService.sendNotificationAboutNewCheckinCredentials(updatedCredential.getHotelId(), updatedCredential.getDeskId());
+        CheckInCredential updatedCredential = update(presentationExchangeId, update);
+        notificationService.sendNotificationAboutCheckinCredential(updatedCredential);
 
-            return updatedCredential;
-        } else {
-            throw new CheckinCredentialNotFoundException();
-        }
+        return updatedCredential;
     }
 
     @Override
     public CheckInCredential updateValidity(String presentationExchangeId, boolean proofVerified)
         throws CheckinCredentialNotFoundException {
-        Optional<CheckInCredential> checkInCredentialOptional = checkInCredentialRepository.findOneByPresentationExchangeId(presentationExchangeId);
-        if (checkInCredentialOptional.isPresent()) {
 
-            // get the existing checkInCredential
-            CheckInCredential checkInCredential = checkInCredentialOptional.get();
+        // sets the checkinCredential valid if the proof is verified
+        CheckInCredential updatedCredential = update(presentationExchangeId, new Update().set("valid", proofVerified));
+        notificationService.sendNotificationAboutCheckinCredential(updatedCredential);
 
-            // sets the checkinCredential valid if the proof is verified
-            checkInCredential.setValid(proofVerified);
-
-            CheckInCredential updatedCredential = checkInCredentialRepository.save(checkInCredential);
-            notificationService.sendNotificationAboutNewCheckinCredentials(updatedCredential.getHotelId(), updatedCredential.getDeskId());
+        return updatedCredential;
+    }
 
-            return updatedCredential;
-        } else {
+    /**
+     * Updates only the given fields in a single atomic operation, so concurrent updates of other fields are not lost.
+     *
+     * @return the updated checkInCredential.
+     */
+    private CheckInCredential update(String presentationExchangeId, Update update) throws CheckinCredentialNotFoundException {
+        CheckInCredential updatedCredential = mongoTemplate.findAndModify(
+            Query.query(Criteria.where("presentationExchangeId").is(presentationExchangeId)), update,
+            FindAndModifyOptions.options().returnNew(true), CheckInCredential.class);
+        if (updatedCredential == null) {
             throw new CheckinCredentialNotFoundException();
         }
+        return updatedCredential;
     }
 
     public Optional<CheckInCredentialDTO> getCheckInCredentialById(String id) {
         return checkInCredentialRepository.findById(id).map(checkInCredentialMapper::checkInCredentialToCheckInCredentialDTO);
     }
+
+    /**
+     * @return the opaque position of the check-in credential in the desk list.
+     */
+    private static String encodeCursor(CheckInCredential checkInCredential) {
+        String position = checkInCredential.getScanDate().getTime() + ":" + checkInCredential.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a check-in credential holding the scan date and id of the position.
+     */
+    private static CheckInCredential decodeCursor(String cursor) throws InvalidCursorException {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            if (separator < 0) {
+                throw new InvalidCursorException();
+            }
+            CheckInCredential checkInCredential = new CheckInCredential();
+            checkInCredential.setScanDate(new Date(Long.parseLong(position.substring(0, separator))));
+            checkInCredential.setId(position.substring(separator + 1));
+            return checkInCredential;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException();
+        }
+    }
 }
 
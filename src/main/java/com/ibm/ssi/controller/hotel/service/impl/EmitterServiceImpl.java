@@ -18,8 +18,8 @@ package com.ibm.ssi.controller.hotel.service.impl;
 
 import java.util.UUID;
 
-import com.ibm.ssi.controller.hotel.repository.EmitterRepository;
 import com.ibm.ssi.controller.hotel.service.EmitterService;
+import com.ibm.ssi.controller.hotel.service.NotificationService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,29 +34,32 @@ public class EmitterServiceImpl implements EmitterService {
     private static final Logger LOG = LoggerFactory.getLogger(EmitterServiceImpl.class);
 
     @Autowired
-    private EmitterRepository repository;
+    private SseEventDispatcher dispatcher;
+
+    @Autowired
+    private NotificationService notificationService;
 
     @Value("${ssibk.hotel.controller.events.connection.timeout}")
     private long timeout;
 
     @Override
-    public SseEmitter createEmitter(String hotelId, String deskId) {
+    public SseEmitter createEmitter(String hotelId, String deskId, String lastEventId) {
         String uuid = UUID.randomUUID().toString();
         SseEmitter emitter = new SseEmitter(timeout);
 
         emitter.onCompletion(() -> {
             LOG.debug("onCompletion called on emitter {}", emitter);
-            repository.remove(uuid);
+            dispatcher.unregister(uuid);
         });
         emitter.onTimeout(() -> {
             LOG.debug("onTimeout called on emitter {}", emitter);
-            repository.remove(uuid);
+            dispatcher.unregister(uuid);
         });
         emitter.onError(e -> {
             LOG.debug("onError called on emitter {}", emitter);
-            repository.remove(uuid);
+            dispatcher.unregister(uuid);
         });
-        repository.addEmitter(uuid, hotelId, deskId, emitter);
+        notificationService.subscribe(uuid, hotelId, deskId, emitter, lastEventId);
 
         return emitter;
     }
@@ -61,7 +61,7 @@ public class IntegrationServiceImpl implements IntegrationService {
         String hotelId = pmsDataDTO.getCheckInCredential().getHotelId();
         String deskId = pmsDataDTO.getCheckInCredential().getDeskId();
         this.checkInCredentialRepository.deleteById(id);
-        this.notificationService.sendNotificationAboutNewCheckinCredentials(hotelId, deskId);
+        this.notificationService.sendNotificationAboutRemovedCheckinCredential(hotelId, deskId, id);
     }
 
     @Override
@@ -1,13 +1,16 @@
 package com.ibm.ssi.controller.hotel.service.impl;
 
-import java.util.List;
-
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
 import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
+import com.ibm.ssi.controller.hotel.security.jwt.JWTTokenBlacklist;
+import com.ibm.ssi.controller.hotel.security.jwt.TokenProvider;
 import com.ibm.ssi.controller.hotel.service.JWTTokenService;
 import com.ibm.ssi.controller.hotel.service.dto.JWTTokenDTO;
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidJWTTokenException;
 import com.ibm.ssi.controller.hotel.service.exceptions.JWTTokenAlreadyBlacklisted;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -16,14 +19,32 @@ public class JWTTokenServiceImpl implements JWTTokenService {
   @Autowired
   JWTTokenBlacklistRepository jwtTokenBlacklistRepository;
 
+  @Autowired
+  JWTTokenBlacklist jwtTokenBlacklist;
+
+  @Autowired
+  TokenProvider tokenProvider;
+
   @Override
-  public JWTTokenDTO addToBlacklist(JWTTokenDTO jwtToken) throws JWTTokenAlreadyBlacklisted {
-    List<JWTTokenDTO> tokens = jwtTokenBlacklistRepository.findByToken(jwtToken.token);
+  public JWTTokenDTO addToBlacklist(JWTTokenDTO jwtToken) throws JWTTokenAlreadyBlacklisted, InvalidJWTTokenException {
+    if (jwtTokenBlacklist.isBlacklisted(jwtToken.getToken())) {
+      throw new JWTTokenAlreadyBlacklisted();
+    }
+    // only tokens issued by this application are stored, they carry the expiration of the blacklist entry
+    if (!tokenProvider.validateToken(jwtToken.getToken())) {
+      throw new InvalidJWTTokenException();
+    }
+    BlacklistedJWTToken blacklistedToken = jwtTokenBlacklist.createEntry(jwtToken.getToken());
 
-    if (!tokens.isEmpty()) {
+    try {
+      // the digest is the id, a token blacklisted before is rejected by the unique index
+      jwtTokenBlacklistRepository.insert(blacklistedToken);
+    } catch (DuplicateKeyException e) {
       throw new JWTTokenAlreadyBlacklisted();
     }
+    jwtTokenBlacklist.add(blacklistedToken);
 
-    return jwtTokenBlacklistRepository.insert(jwtToken);
-  }  
+    jwtToken.setCreatedAt(blacklistedToken.getCreatedAt());
+    return jwtToken;
+  }
 }
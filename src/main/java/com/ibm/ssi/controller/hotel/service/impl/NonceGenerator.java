@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.math.BigInteger;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+/**
+ * Generates the nonces of proof requests.
+ * <p>
+ * A single DRBG is instantiated and seeded at startup and shared by all threads, it is reseeded periodically in the
+ * background instead of being created and seeded per proof request. Optionally a pool of nonces is generated ahead of
+ * time and refilled on the task executor when it runs low.
+ */
+@Service
+public class NonceGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NonceGenerator.class);
+
+    /**
+     * The length in bit of the nonces of proof requests.
+     */
+    public static final int NONCE_BITS = 80;
+
+    private final SecureRandom random;
+
+    private final Executor executor;
+
+    // null if the pool is disabled
+    private final BlockingQueue<String> pool;
+
+    private final int refillThreshold;
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    public NonceGenerator(@Qualifier("taskExecutor") Executor executor,
+            @Value("${ssibk.hotel.controller.nonce.pool-size:0}") int poolSize) {
+        this.random = createRandom();
+        this.executor = executor;
+        this.pool = poolSize > 0 ? new ArrayBlockingQueue<>(poolSize) : null;
+        this.refillThreshold = poolSize / 2;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (pool != null) {
+            scheduleRefill();
+        }
+    }
+
+    /**
+     * Returns a nonce of {@link #NONCE_BITS} bits, taken from the pool if it is enabled and not empty.
+     *
+     * @return a decimal representation of the nonce.
+     */
+    public String nextNonce() {
+        if (pool == null) {
+            return generate(NONCE_BITS);
+        }
+
+        String nonce = pool.poll();
+        if (pool.size() <= refillThreshold) {
+            scheduleRefill();
+        }
+        return nonce != null ? nonce : generate(NONCE_BITS);
+    }
+
+    /**
+     * Generates a new nonce.
+     *
+     * @param numberOfBits the length of the nonce in bit.
+     * @return a decimal representation of the nonce.
+     */
+    public String generate(int numberOfBits) {
+        byte[] nonce = new byte[numberOfBits / 8];
+        random.nextBytes(nonce);
+        return new BigInteger(nonce).toString();
+    }
+
+    /**
+     * Reseeds the shared DRBG with fresh entropy.
+     */
+    @Scheduled(initialDelayString = "${ssibk.hotel.controller.nonce.reseed-interval:3600000}",
+        fixedDelayString = "${ssibk.hotel.controller.nonce.reseed-interval:3600000}")
+    public void reseed() {
+        LOG.debug("Reseeding the nonce generator");
+        random.reseed();
+    }
+
+    int getPoolSize() {
+        return pool != null ? pool.size() : 0;
+    }
+
+    private void scheduleRefill() {
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::refill);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Could not refill the nonce pool: {}", e.toString());
+            refilling.set(false);
+        }
+    }
+
+    private void refill() {
+        try {
+            while (pool.remainingCapacity() > 0) {
+                pool.offer(generate(NONCE_BITS));
+            }
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    private static SecureRandom createRandom() {
+        try {
+            SecureRandom random = SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(128, RESEED_ONLY, null));
+            // the DRBG is seeded lazily, do it now rather than on the first proof request
+            random.nextBytes(new byte[1]);
+            return random;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("DRBG is not available", e);
+        }
+    }
+}
@@ -16,14 +16,29 @@
 
 package com.ibm.ssi.controller.hotel.service.impl;
 
-import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
 import com.ibm.ssi.controller.hotel.repository.EmitterRepository;
 import com.ibm.ssi.controller.hotel.service.NotificationService;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialChangeDTO;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialEventDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
@@ -34,27 +49,343 @@ public class NotificationServiceImpl implements NotificationService {
 
     private static final Logger LOG = LoggerFactory.getLogger(NotificationServiceImpl.class);
 
+    public enum FanOut {
+        /** notifications are sent to the emitters of this node only */
+        LOCAL,
+        /** notifications are sent by {@link CheckInCredentialChangeStreamListener} on every node */
+        CHANGE_STREAM
+    }
+
     @Autowired
     private EmitterRepository emitterRepository;
 
+    @Autowired
+    private SseEventDispatcher dispatcher;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    /**
+     * How the notifications reach the emitters of all nodes.
+     */
+    @Value("${ssibk.hotel.controller.events.fan-out:LOCAL}")
+    private FanOut fanOut = FanOut.LOCAL;
+
+    /**
+     * Notifications for the same desk within this window are merged into a single event, 0 disables coalescing.
+     */
+    @Value("${ssibk.hotel.controller.events.coalescing.window:100}")
+    private long coalescingWindow;
+
+    /**
+     * Number of events kept per desk to be replayed to reconnecting clients.
+     */
+    @Value("${ssibk.hotel.controller.events.replay.size:32}")
+    private int replaySize;
+
+    /**
+     * Events older than this number of milliseconds are not replayed anymore.
+     */
+    @Value("${ssibk.hotel.controller.events.replay.max-age:300000}")
+    private long replayMaxAge;
+
+    // topic -> notification waiting for the end of its coalescing window
+    private final Map<String, PendingNotification> pendingNotifications = new ConcurrentHashMap<>();
+
+    // topic -> version and recent events of the topic
+    private final Map<String, EventHistory> histories = new ConcurrentHashMap<>();
+
+    // versions are counted per node, event ids of other nodes or of a previous run must not be replayed
+    private final String instanceId = UUID.randomUUID().toString();
+
     @Override
-    public void sendNotificationAboutNewCheckinCredentials(String hotelId, String deskId) {
-        LOG.debug("Informing subscribers about new checkin-credential for hotelId and deskId: {} {}", hotelId, deskId);
-        doSendNotification(hotelId, deskId, NEW_CHECKIN_CREDENTIAL);
+    public void subscribe(String uuid, String hotelId, String deskId, SseEmitter emitter, String lastEventId) {
+        while (true) {
+            EventHistory history = getHistory(hotelId, deskId);
+            // registering and replaying under the history lock keeps new events from overtaking the replayed ones
+            synchronized (history) {
+                if (history.removed) {
+                    continue;
+                }
+                dispatcher.register(uuid, hotelId, deskId, emitter);
+
+                if (lastEventId == null || lastEventId.isEmpty()) {
+                    return;
+                }
+                Long lastVersion = parseEventId(lastEventId);
+                if (lastVersion == null) {
+                    resync(uuid, history);
+                } else {
+                    replay(uuid, history, lastVersion);
+                }
+                return;
+            }
+        }
     }
 
-    private void doSendNotification(String hotelId, String deskId, String eventName) {
+    /**
+     * Evicts the events which are too old to be replayed, they contain personal data of the guests. The histories of
+     * desks without events and emitters are dropped.
+     */
+    @Scheduled(initialDelayString = "${ssibk.hotel.controller.events.replay.max-age:300000}",
+        fixedDelayString = "${ssibk.hotel.controller.events.replay.max-age:300000}")
+    public void evictHistories() {
+        long oldest = System.currentTimeMillis() - replayMaxAge;
+        for (EventHistory history : histories.values()) {
+            synchronized (history) {
+                history.evictOlderThan(oldest);
+                if (history.entries.isEmpty()
+                        && emitterRepository.findByHotelIdAndDeskId(history.hotelId, history.deskId).isEmpty()) {
+                    history.removed = true;
+                    histories.remove(getTopic(history.hotelId, history.deskId), history);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sendNotificationAboutCheckinCredential(CheckInCredential checkInCredential) {
+        if (fanOut == FanOut.CHANGE_STREAM) {
+            return;
+        }
+        LOG.debug("Informing subscribers about checkin-credential {} for hotelId and deskId: {} {}",
+            checkInCredential.getId(), checkInCredential.getHotelId(), checkInCredential.getDeskId());
+        notify(checkInCredential.getHotelId(), checkInCredential.getDeskId(), new CheckInCredentialChangeDTO(checkInCredential));
+    }
+
+    @Override
+    public void sendNotificationAboutRemovedCheckinCredential(String hotelId, String deskId, String id) {
+        if (fanOut == FanOut.CHANGE_STREAM) {
+            return;
+        }
+        LOG.debug("Informing subscribers about removed checkin-credential {} for hotelId and deskId: {} {}", id, hotelId, deskId);
+        notify(hotelId, deskId, new CheckInCredentialChangeDTO(id, CheckInCredentialChangeDTO.State.REMOVED));
+    }
+
+    @Override
+    public void sendNotificationAboutExpiredCheckinCredential(String hotelId, String deskId, String id) {
+        if (fanOut == FanOut.CHANGE_STREAM) {
+            // the change stream reports the deletion as removed
+            return;
+        }
+        LOG.debug("Informing subscribers about expired checkin-credential {} for hotelId and deskId: {} {}", id, hotelId, deskId);
+        notify(hotelId, deskId, new CheckInCredentialChangeDTO(id, CheckInCredentialChangeDTO.State.EXPIRED));
+    }
+
+    @Override
+    public void notifyLocalEmitters(String hotelId, String deskId, CheckInCredentialChangeDTO change) {
+        LOG.debug("Informing subscribers about {} checkin-credential {} for hotelId and deskId: {} {}",
+            change.getState(), change.getId(), hotelId, deskId);
+        notify(hotelId, deskId, change);
+    }
+
+    private void notify(String hotelId, String deskId, CheckInCredentialChangeDTO change) {
+        if (coalescingWindow <= 0) {
+            doSendNotification(hotelId, deskId, NEW_CHECKIN_CREDENTIAL, Collections.singletonList(change));
+            return;
+        }
+
+        String topic = getTopic(hotelId, deskId);
+        PendingNotification created = new PendingNotification(hotelId, deskId, NEW_CHECKIN_CREDENTIAL);
+        created.add(change);
+        while (true) {
+            PendingNotification pending = pendingNotifications.putIfAbsent(topic, created);
+            if (pending == null) {
+                taskScheduler.schedule(() -> flush(topic), Instant.now().plusMillis(coalescingWindow));
+                return;
+            }
+            if (pending.add(change)) {
+                LOG.debug("Coalescing notification for hotelId and deskId: {} {}", hotelId, deskId);
+                return;
+            }
+            // the pending notification is being flushed and was already removed from the map, start a new one
+        }
+    }
+
+    private void flush(String topic) {
+        PendingNotification notification = pendingNotifications.remove(topic);
+        if (notification != null) {
+            doSendNotification(notification.hotelId, notification.deskId, notification.eventName, notification.close());
+        }
+    }
+
+    private void doSendNotification(String hotelId, String deskId, String eventName, List<CheckInCredentialChangeDTO> changes) {
+        while (true) {
+            EventHistory history = getHistory(hotelId, deskId);
+            synchronized (history) {
+                if (history.removed) {
+                    continue;
+                }
+                history.evictOlderThan(System.currentTimeMillis() - replayMaxAge);
+                CheckInCredentialEventDTO payload = new CheckInCredentialEventDTO(history.version + 1, changes);
+                history.record(eventName, payload, replaySize);
+                dispatch(hotelId, deskId, eventName, payload);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Must be called under the history lock, so the events of a desk are dispatched in the order of their versions.
+     */
+    private void dispatch(String hotelId, String deskId, String eventName, CheckInCredentialEventDTO payload) {
         Map<String, SseEmitter> emitters = emitterRepository.findByHotelIdAndDeskId(hotelId, deskId);
         LOG.debug("Found {} emitters for hotelId and deskId: {} {}", emitters.size(), hotelId, deskId);
-        for (Map.Entry<String, SseEmitter> entry : emitters.entrySet()) {
-            try {
-                LOG.debug("Sending eventName: {} for hotelId and deskId: {} {}", eventName, hotelId, deskId);
-                entry.getValue().send(event().name(eventName).data("{}"));
-            } catch (IOException | IllegalStateException e) {
-                LOG.debug("Error while sending eventName: {} for hotelId and deskId: {} {} - exception: {}", eventName, hotelId, deskId, e);
-                emitterRepository.remove(entry.getKey());
+        if (emitters.isEmpty()) {
+            return;
+        }
+
+        LOG.debug("Dispatching eventName: {} version: {} for hotelId and deskId: {} {}", eventName, payload.getVersion(), hotelId, deskId);
+        for (String uuid : emitters.keySet()) {
+            // the dispatcher sends asynchronously, slow or broken connections do not block the caller
+            dispatcher.dispatch(uuid, createEvent(eventName, payload));
+        }
+    }
+
+    /**
+     * @return the history of the desk, it has to be checked for {@link EventHistory#removed} under its lock.
+     */
+    private EventHistory getHistory(String hotelId, String deskId) {
+        return histories.computeIfAbsent(getTopic(hotelId, deskId), topic -> new EventHistory(hotelId, deskId));
+    }
+
+    private void replay(String uuid, EventHistory history, long lastVersion) {
+        history.evictOlderThan(System.currentTimeMillis() - replayMaxAge);
+        if (lastVersion == history.version) {
+            return;
+        }
+
+        HistoryEntry oldest = history.entries.peekFirst();
+        if (lastVersion > history.version || oldest == null || oldest.payload.getVersion() > lastVersion + 1) {
+            LOG.debug("Cannot replay events after version {} to emitter {}", lastVersion, uuid);
+            resync(uuid, history);
+            return;
+        }
+
+        LOG.debug("Replaying events after version {} to emitter {}", lastVersion, uuid);
+        for (HistoryEntry entry : history.entries) {
+            if (entry.payload.getVersion() > lastVersion) {
+                dispatcher.dispatch(uuid, createEvent(entry.eventName, entry.payload));
+            }
+        }
+    }
+
+    private void resync(String uuid, EventHistory history) {
+        // the missed events are not available anymore or were sent by another node
+        LOG.debug("Requesting a resync from emitter {}", uuid);
+        CheckInCredentialEventDTO payload = new CheckInCredentialEventDTO(history.version, Collections.emptyList());
+        dispatcher.dispatch(uuid, createEvent(RESYNC, payload));
+    }
+
+    private SseEmitter.SseEventBuilder createEvent(String eventName, CheckInCredentialEventDTO payload) {
+        return event()
+            .id(instanceId + ":" + payload.getVersion())
+            .name(eventName)
+            .data(payload, MediaType.APPLICATION_JSON);
+    }
+
+    private Long parseEventId(String eventId) {
+        int separator = eventId.lastIndexOf(':');
+        if (separator < 0 || !instanceId.equals(eventId.substring(0, separator))) {
+            return null;
+        }
+        try {
+            return Long.valueOf(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            LOG.debug("Ignoring invalid event id {}", eventId);
+            return null;
+        }
+    }
+
+    private static String getTopic(String hotelId, String deskId) {
+        return hotelId + ":" + deskId;
+    }
+
+    /**
+     * The version and the most recent events of a topic. Access is guarded by the instance lock.
+     */
+    private static final class EventHistory {
+
+        private final String hotelId;
+
+        private final String deskId;
+
+        private long version;
+
+        private final Deque<HistoryEntry> entries = new ArrayDeque<>();
+
+        // set once the history was dropped from the map, a new one has to be used instead
+        private boolean removed;
+
+        private EventHistory(String hotelId, String deskId) {
+            this.hotelId = hotelId;
+            this.deskId = deskId;
+        }
+
+        private void record(String eventName, CheckInCredentialEventDTO payload, int maxSize) {
+            version = payload.getVersion();
+            entries.addLast(new HistoryEntry(eventName, payload, System.currentTimeMillis()));
+            while (entries.size() > maxSize) {
+                entries.removeFirst();
             }
         }
+
+        private void evictOlderThan(long timestamp) {
+            while (!entries.isEmpty() && entries.peekFirst().createdAt < timestamp) {
+                entries.removeFirst();
+            }
+        }
+    }
+
+    private static final class HistoryEntry {
+
+        private final String eventName;
+
+        private final CheckInCredentialEventDTO payload;
+
+        private final long createdAt;
+
+        private HistoryEntry(String eventName, CheckInCredentialEventDTO payload, long createdAt) {
+            this.eventName = eventName;
+            this.payload = payload;
+            this.createdAt = createdAt;
+        }
     }
 
+    private static final class PendingNotification {
+
+        private final String hotelId;
+
+        private final String deskId;
+
+        private final String eventName;
+
+        // credential id -> latest change, later changes of the same credential replace earlier ones
+        private final Map<String, CheckInCredentialChangeDTO> changes = new LinkedHashMap<>();
+
+        private boolean closed;
+
+        private PendingNotification(String hotelId, String deskId, String eventName) {
+            this.hotelId = hotelId;
+            this.deskId = deskId;
+            this.eventName = eventName;
+        }
+
+        /**
+         * @return {@code false} if the notification was already flushed and does not accept changes anymore.
+         */
+        private synchronized boolean add(CheckInCredentialChangeDTO change) {
+            if (closed) {
+                return false;
+            }
+            changes.remove(change.getId());
+            changes.put(change.getId(), change);
+            return true;
+        }
+
+        private synchronized List<CheckInCredentialChangeDTO> close() {
+            closed = true;
+            return new ArrayList<>(changes.values());
+        }
+    }
 }
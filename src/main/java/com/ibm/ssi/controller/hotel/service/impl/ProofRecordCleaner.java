@@ -0,0 +1,228 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import com.ibm.ssi.controller.hotel.client.ACAPYClient;
+import com.ibm.ssi.controller.hotel.client.AgentUnavailableException;
+import com.ibm.ssi.controller.hotel.domain.PendingProofRecordDeletion;
+import com.ibm.ssi.controller.hotel.repository.PendingProofRecordDeletionRepository;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Deletes proof records from the agent in the background.
+ * <p>
+ * Deletions are persisted in MongoDB when they are scheduled, so they survive a restart. A periodic run on the task
+ * executor reads the due ones from MongoDB in batches and deletes them from the agent one by one; a failed deletion is
+ * retried with exponential backoff and given up after the maximum number of attempts. Several nodes may process the same deletion, the agent then answers 404 which
+ * counts as deleted.
+ */
+@Service
+public class ProofRecordCleaner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProofRecordCleaner.class);
+
+    private final ACAPYClient acapyClient;
+
+    private final PendingProofRecordDeletionRepository pendingDeletionRepository;
+
+    private final Executor executor;
+
+    private final String apikey;
+
+    private final int batchSize;
+
+    private final int maxAttempts;
+
+    private final long initialBackoff;
+
+    private final long maxBackoff;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    private final Counter deleted;
+
+    private final Counter failed;
+
+    private final Counter abandoned;
+
+    public ProofRecordCleaner(ACAPYClient acapyClient, PendingProofRecordDeletionRepository pendingDeletionRepository,
+            @Qualifier("taskExecutor") Executor executor, MeterRegistry meterRegistry,
+            @Value("${ssibk.hotel.controller.agent.apikey}") String apikey,
+            @Value("${ssibk.hotel.controller.proof-record-cleanup.batch-size:50}") int batchSize,
+            @Value("${ssibk.hotel.controller.proof-record-cleanup.max-attempts:10}") int maxAttempts,
+            @Value("${ssibk.hotel.controller.proof-record-cleanup.initial-backoff:5000}") long initialBackoff,
+            @Value("${ssibk.hotel.controller.proof-record-cleanup.max-backoff:600000}") long maxBackoff) {
+        this.acapyClient = acapyClient;
+        this.pendingDeletionRepository = pendingDeletionRepository;
+        this.executor = executor;
+        this.apikey = apikey;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+
+        Gauge.builder("hotel.controller.proof.cleanup.backlog", backlog, AtomicLong::get)
+            .description("Number of proof records still to be deleted from the agent")
+            .register(meterRegistry);
+        this.deleted = Counter.builder("hotel.controller.proof.cleanup.deletions")
+            .description("Number of attempts to delete a proof record from the agent")
+            .tag("result", "deleted")
+            .register(meterRegistry);
+        this.failed = Counter.builder("hotel.controller.proof.cleanup.deletions")
+            .description("Number of attempts to delete a proof record from the agent")
+            .tag("result", "failed")
+            .register(meterRegistry);
+        this.abandoned = Counter.builder("hotel.controller.proof.cleanup.deletions")
+            .description("Number of attempts to delete a proof record from the agent")
+            .tag("result", "abandoned")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        backlog.set(pendingDeletionRepository.count());
+    }
+
+    /**
+     * Schedules the deletion of a proof record from the agent.
+     *
+     * @param presentationExchangeId the id of the proof record.
+     */
+    public void scheduleDeletion(String presentationExchangeId) {
+        pendingDeletionRepository.save(new PendingProofRecordDeletion(presentationExchangeId));
+        backlog.incrementAndGet();
+    }
+
+    /**
+     * Starts a cleanup run on the task executor, unless one is still running.
+     */
+    @Scheduled(initialDelayString = "${ssibk.hotel.controller.proof-record-cleanup.interval:5000}",
+        fixedDelayString = "${ssibk.hotel.controller.proof-record-cleanup.interval:5000}")
+    public void scheduleCleanup() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    cleanUp();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Could not start deleting proof records from the agent: {}", e.toString());
+            running.set(false);
+        }
+    }
+
+    /**
+     * Deletes the due proof records from the agent, they are read from MongoDB batch by batch.
+     */
+    void cleanUp() {
+        try {
+            List<PendingProofRecordDeletion> batch;
+            do {
+                batch = pendingDeletionRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(new Date(),
+                    PageRequest.of(0, batchSize));
+            } while (!batch.isEmpty() && deleteBatch(batch) && batch.size() == batchSize);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not delete proof records from the agent: {}", e.toString());
+        } finally {
+            backlog.set(pendingDeletionRepository.count());
+        }
+    }
+
+    /**
+     * @return whether the agent is available for the next batch.
+     */
+    private boolean deleteBatch(List<PendingProofRecordDeletion> batch) {
+        List<String> done = new ArrayList<>(batch.size());
+        List<PendingProofRecordDeletion> retries = new ArrayList<>();
+        boolean agentAvailable = true;
+
+        for (PendingProofRecordDeletion pendingDeletion : batch) {
+            try {
+                acapyClient.deleteProofRecord(apikey, pendingDeletion.getPresentationExchangeId());
+                deleted.increment();
+                done.add(pendingDeletion.getPresentationExchangeId());
+                continue;
+            } catch (FeignException.NotFound e) {
+                // already deleted, e.g. by another node
+                done.add(pendingDeletion.getPresentationExchangeId());
+                continue;
+            } catch (AgentUnavailableException e) {
+                // the remaining deletions are left untouched for the next run
+                LOG.debug("Postponing the deletion of proof records: {}", e.getMessage());
+                agentAvailable = false;
+                break;
+            } catch (RuntimeException e) {
+                LOG.debug("Could not delete proof record {}: {}", pendingDeletion.getPresentationExchangeId(), e.toString());
+            }
+
+            failed.increment();
+            int attempts = pendingDeletion.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                LOG.warn("Giving up deleting proof record {} from the agent after {} attempts",
+                    pendingDeletion.getPresentationExchangeId(), attempts);
+                abandoned.increment();
+                done.add(pendingDeletion.getPresentationExchangeId());
+            } else {
+                pendingDeletion.setAttempts(attempts);
+                pendingDeletion.setNextAttempt(new Date(System.currentTimeMillis() + backoff(attempts)));
+                retries.add(pendingDeletion);
+            }
+        }
+
+        if (!done.isEmpty()) {
+            pendingDeletionRepository.deleteByPresentationExchangeIdIn(done);
+        }
+        if (!retries.isEmpty()) {
+            pendingDeletionRepository.saveAll(retries);
+        }
+        return agentAvailable;
+    }
+
+    private long backoff(int attempts) {
+        // doubles with every attempt, capped at the max backoff
+        long backoff = initialBackoff << Math.min(attempts - 1, 30);
+        return backoff <= 0 ? maxBackoff : Math.min(backoff, maxBackoff);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import com.ibm.ssi.controller.hotel.client.ACAPYClient;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofResponseDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+/**
+ * Proof requests created at the agent ahead of time, so a QR scan does not have to wait for the agent.
+ * <p>
+ * The pool is refilled on the task executor whenever a proof request is taken. Proof requests older than the
+ * configured max age are deleted at the agent before their non-revocation timestamp gets stale. A pool size of 0
+ * disables the pool, {@link #take()} then always returns {@code null}.
+ */
+@Service
+public class ProofRequestPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProofRequestPool.class);
+
+    private final ACAPYClient acapyClient;
+
+    private final Executor executor;
+
+    private final TaskScheduler taskScheduler;
+
+    private final String apikey;
+
+    private final int size;
+
+    private final long maxAge;
+
+    private final BlockingDeque<PooledProofRequest> proofRequests;
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter expired;
+
+    private final Timer refillLatency;
+
+    private volatile Supplier<ProofRequestDTO> requestFactory;
+
+    // incremented by each start, proof requests created for an earlier generation are discarded
+    private volatile int generation;
+
+    private ScheduledFuture<?> expiration;
+
+    public ProofRequestPool(ACAPYClient acapyClient, @Qualifier("taskExecutor") Executor executor,
+            TaskScheduler taskScheduler, MeterRegistry meterRegistry,
+            @Value("${ssibk.hotel.controller.agent.apikey}") String apikey,
+            @Value("${ssibk.hotel.controller.proof-request-pool.size:0}") int size,
+            @Value("${ssibk.hotel.controller.proof-request-pool.max-age:60000}") long maxAge) {
+        this.acapyClient = acapyClient;
+        this.executor = executor;
+        this.taskScheduler = taskScheduler;
+        this.apikey = apikey;
+        this.size = size;
+        this.maxAge = maxAge;
+        this.proofRequests = new LinkedBlockingDeque<>(Math.max(size, 1));
+
+        Gauge.builder("hotel.controller.proof.pool.size", proofRequests, BlockingDeque::size)
+            .description("Number of proof requests created ahead of time")
+            .register(meterRegistry);
+        this.hits = Counter.builder("hotel.controller.proof.pool.requests")
+            .description("Number of proof requests taken from the pool or created on demand")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("hotel.controller.proof.pool.requests")
+            .description("Number of proof requests taken from the pool or created on demand")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        this.expired = Counter.builder("hotel.controller.proof.pool.expired")
+            .description("Number of pooled proof requests discarded because they got too old")
+            .register(meterRegistry);
+        this.refillLatency = Timer.builder("hotel.controller.proof.pool.refill")
+            .description("Time to create a proof request at the agent for the pool")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Starts filling the pool, pooled proof requests created by a previous factory are discarded.
+     *
+     * @param requestFactory creates the proof requests sent to the agent.
+     */
+    public synchronized void start(Supplier<ProofRequestDTO> requestFactory) {
+        this.requestFactory = requestFactory;
+        generation++;
+        if (size <= 0) {
+            return;
+        }
+
+        PooledProofRequest outdated;
+        while ((outdated = proofRequests.pollFirst()) != null) {
+            discard(outdated);
+        }
+        if (expiration == null) {
+            expiration = taskScheduler.scheduleWithFixedDelay(this::expire, Duration.ofMillis(Math.max(maxAge / 4, 1)));
+        }
+        scheduleRefill();
+    }
+
+    /**
+     * Takes a proof request which was created at the agent ahead of time.
+     *
+     * @return the proof request, {@code null} if none is available and it has to be created on demand.
+     */
+    public ProofResponseDTO take() {
+        if (size <= 0) {
+            return null;
+        }
+
+        long oldest = System.currentTimeMillis() - maxAge;
+        int current = generation;
+        PooledProofRequest proofRequest;
+        while ((proofRequest = proofRequests.pollFirst()) != null
+                && (proofRequest.createdAt < oldest || proofRequest.generation != current)) {
+            if (proofRequest.generation == current) {
+                expired.increment();
+            }
+            discard(proofRequest);
+        }
+        scheduleRefill();
+
+        if (proofRequest == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return proofRequest.proofResponse;
+    }
+
+    void expire() {
+        long oldest = System.currentTimeMillis() - maxAge;
+        PooledProofRequest proofRequest;
+        while ((proofRequest = proofRequests.peekFirst()) != null && proofRequest.createdAt < oldest) {
+            if (proofRequests.removeFirstOccurrence(proofRequest)) {
+                expired.increment();
+                discard(proofRequest);
+            }
+        }
+        scheduleRefill();
+    }
+
+    private void scheduleRefill() {
+        if (requestFactory == null || proofRequests.size() >= size || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::refill);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Could not refill the proof request pool: {}", e.toString());
+            refilling.set(false);
+        }
+    }
+
+    private void refill() {
+        try {
+            while (proofRequests.size() < size) {
+                // read before the factory, start sets the factory before it increments the generation
+                int requestGeneration = generation;
+                Supplier<ProofRequestDTO> factory = requestFactory;
+                // the non-revocation interval of the proof request ends now
+                long createdAt = System.currentTimeMillis();
+                ProofResponseDTO proofResponse = refillLatency.record(
+                    () -> acapyClient.createProofRequest(apikey, factory.get()));
+                PooledProofRequest proofRequest = new PooledProofRequest(proofResponse, createdAt, requestGeneration);
+                if (requestGeneration != generation) {
+                    // the pool was restarted while the proof request was created
+                    discard(proofRequest);
+                    continue;
+                }
+                if (!proofRequests.offerLast(proofRequest)) {
+                    // the pool was filled concurrently
+                    discard(proofRequest);
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not create a proof request for the pool: {}", e.toString());
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    private void discard(PooledProofRequest proofRequest) {
+        String presentationExchangeId = proofRequest.proofResponse.getPresentationExchangeId();
+        try {
+            executor.execute(() -> delete(presentationExchangeId));
+        } catch (RejectedExecutionException e) {
+            delete(presentationExchangeId);
+        }
+    }
+
+    private void delete(String presentationExchangeId) {
+        try {
+            acapyClient.deleteProofRecord(apikey, presentationExchangeId);
+        } catch (RuntimeException e) {
+            LOG.debug("Could not delete pooled proof request {}: {}", presentationExchangeId, e.toString());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (expiration != null) {
+            expiration.cancel(false);
+        }
+        PooledProofRequest proofRequest;
+        while ((proofRequest = proofRequests.pollFirst()) != null) {
+            delete(proofRequest.proofResponse.getPresentationExchangeId());
+        }
+    }
+
+    private static final class PooledProofRequest {
+
+        private final ProofResponseDTO proofResponse;
+
+        private final long createdAt;
+
+        private final int generation;
+
+        private PooledProofRequest(ProofResponseDTO proofResponse, long createdAt, int generation) {
+            this.proofResponse = proofResponse;
+            this.createdAt = createdAt;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.ssi.controller.hotel.client.model.NonRevokedRestriction;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequest;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestProperty;
+import com.ibm.ssi.controller.hotel.client.model.RequestedAttributes;
+import com.ibm.ssi.controller.hotel.client.model.RequestedPredicates;
+
+/**
+ * The parts of a proof request which only depend on the configuration, parsed once.
+ * <p>
+ * The attribute names and restrictions are immutable and shared by all proof requests created from the template,
+ * only the nonce and the end of the non-revocation interval differ per request.
+ */
+final class ProofRequestTemplate {
+
+    static final List<String> MASTER_ID_NAMES = Collections.unmodifiableList(Arrays.asList(
+        "firstName", "familyName", "addressStreet", "addressZipCode", "addressCountry", "addressCity",
+        "dateOfExpiry", "dateOfBirth", "hardwareDid"));
+
+    static final List<String> CORPORATE_ID_NAMES = Collections.unmodifiableList(Arrays.asList(
+        "firmCity", "firmStreet", "firmPostalcode", "firmName", "firmSubject", "firstName", "lastName"));
+
+    private final List<Map<String, String>> masterIdRestrictions;
+
+    private final List<Map<String, String>> corporateIdRestrictions;
+
+    /**
+     * @param masterIdCredDefIds    comma separated credential definition ids accepted for the masterId.
+     * @param corporateIdSchemaIds  comma separated schema ids accepted for the corporateId.
+     * @param corporateIdIssuerDids comma separated DIDs of the issuers accepted for the corporateId.
+     */
+    ProofRequestTemplate(String masterIdCredDefIds, String corporateIdSchemaIds, String corporateIdIssuerDids) {
+        // Restriction regarding CredDefs for masterId
+        List<Map<String, String>> masterId = new ArrayList<>();
+        for (String masterIdCredDefId : masterIdCredDefIds.split(",")) {
+            masterId.add(Collections.singletonMap("cred_def_id", masterIdCredDefId));
+        }
+        this.masterIdRestrictions = Collections.unmodifiableList(masterId);
+
+        // Restriction regarding schemas for corporateId, every schema is accepted from every issuer
+        String[] issuerDids = corporateIdIssuerDids.split(",");
+        List<Map<String, String>> corporateId = new ArrayList<>();
+        for (String schemaId : corporateIdSchemaIds.split(",")) {
+            for (String issuerDid : issuerDids) {
+                Map<String, String> restriction = new HashMap<>();
+                restriction.put("schema_id", schemaId);
+                restriction.put("issuer_did", issuerDid);
+                corporateId.add(Collections.unmodifiableMap(restriction));
+            }
+        }
+        this.corporateIdRestrictions = Collections.unmodifiableList(corporateId);
+    }
+
+    /**
+     * Creates a proof request for the agent.
+     *
+     * @param nonce        the nonce of the proof request.
+     * @param nonRevokedTo the epoch second until which the credentials must not be revoked.
+     */
+    ProofRequestDTO createProofRequest(String nonce, int nonRevokedTo) {
+        // Restriction regarding Revocation
+        NonRevokedRestriction nonRevokedRestriction = new NonRevokedRestriction();
+        nonRevokedRestriction.setFrom(0);
+        nonRevokedRestriction.setTo(nonRevokedTo);
+
+        RequestedAttributes requestedAttributes = new RequestedAttributes();
+        requestedAttributes.setMasterId(createProperty(MASTER_ID_NAMES, masterIdRestrictions, nonRevokedRestriction));
+        requestedAttributes.setCorporateId(createProperty(CORPORATE_ID_NAMES, corporateIdRestrictions, nonRevokedRestriction));
+
+        // Composing the proof request
+        ProofRequest proofRequest = new ProofRequest();
+        proofRequest.setName("Proof request");
+        proofRequest.setRequestedPredicates(new RequestedPredicates());
+        proofRequest.setRequestedAttributes(requestedAttributes);
+        proofRequest.setVersion("0.1");
+        proofRequest.setNonce(nonce);
+
+        ProofRequestDTO proofRequestDTO = new ProofRequestDTO();
+        proofRequestDTO.setComment("string"); // TODO: Do we use the comment field?
+        proofRequestDTO.setProofRequest(proofRequest);
+        return proofRequestDTO;
+    }
+
+    List<Map<String, String>> getMasterIdRestrictions() {
+        return masterIdRestrictions;
+    }
+
+    List<Map<String, String>> getCorporateIdRestrictions() {
+        return corporateIdRestrictions;
+    }
+
+    private static ProofRequestProperty createProperty(List<String> names, List<Map<String, String>> restrictions,
+            NonRevokedRestriction nonRevokedRestriction) {
+        ProofRequestProperty property = new ProofRequestProperty();
+        property.setNames(names);
+        property.setNonRevokedRestriction(nonRevokedRestriction);
+        property.setRestrictions(restrictions);
+        return property;
+    }
+}
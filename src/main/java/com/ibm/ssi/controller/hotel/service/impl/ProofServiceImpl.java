@@ -16,21 +16,17 @@
 
 package com.ibm.ssi.controller.hotel.service.impl;
 
-import java.math.BigInteger;
+import java.io.IOException;
 import java.net.URI;
-import java.security.DrbgParameters;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.time.Instant;
 import java.util.*;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import javax.annotation.PostConstruct;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibm.ssi.controller.hotel.client.ACAPYClient;
 import com.ibm.ssi.controller.hotel.client.model.*;
-import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
 import com.ibm.ssi.controller.hotel.service.CheckInCredentialService;
-import com.ibm.ssi.controller.hotel.service.NotificationService;
 import com.ibm.ssi.controller.hotel.service.ProofService;
 import com.ibm.ssi.controller.hotel.service.dto.CorporateIdDTO;
 import com.ibm.ssi.controller.hotel.service.dto.MasterIdDTO;
@@ -42,18 +38,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
-import static java.security.DrbgParameters.Capability.RESEED_ONLY;
-
 @Service
 public class ProofServiceImpl implements ProofService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProofServiceImpl.class);
-    private static final String DIDCOMM_URL = "didcomm://example.org?m=";
     private static final String ARIES_MESSAGE_TYPE = "did:sov:BzCbsNYhMrjHiqZDTUASHg;spec/present-proof/1.0/request-presentation";
     private static final String ARIES_ATTACH_ID = "libindy-request-presentation-0";
+    private static final String AGENT_PROPERTIES = "ssibk.hotel.controller.agent.";
+    private static final String MASTER_ID_CRED_DEF_IDS = AGENT_PROPERTIES + "masterid.credential_definition_ids";
+    private static final String CORPORATE_ID_SCHEMA_IDS = AGENT_PROPERTIES + "corporateid.schema_ids";
+    private static final String CORPORATE_ID_ISSUER_DIDS = AGENT_PROPERTIES + "corporateid.issuer_dids";
 
     @Autowired
     private ACAPYClient acapyClient;
@@ -62,7 +62,13 @@ public class ProofServiceImpl implements ProofService {
     private CheckInCredentialService checkInCredentialService;
 
     @Autowired
-    private NotificationService notificationService;
+    private NonceGenerator nonceGenerator;
+
+    @Autowired
+    private ProofRequestPool proofRequestPool;
+
+    @Autowired
+    private ProofRecordCleaner proofRecordCleaner;
 
     @Value("${ssibk.hotel.controller.agent.apikey}")
     private String apikey;
@@ -85,13 +91,47 @@ public class ProofServiceImpl implements ProofService {
     @Value("${ssibk.hotel.controller.agent.corporateid.issuer_dids}")
     private String corporateIdIssuerDidsString;
 
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private volatile ProofRequestTemplate proofRequestTemplate;
+
+    private ProofUriEncoder proofUriEncoder;
+
+    @PostConstruct
+    public void init() {
+        proofUriEncoder = new ProofUriEncoder(objectMapper);
+        proofRequestTemplate = new ProofRequestTemplate(masterIdCredDefIdsString, corporateIdSchemaIdsString,
+            corporateIdIssuerDidsString);
+        proofRequestPool.start(this::prepareConnectionlessProofRequest);
+    }
+
+    /**
+     * Rebuilds the proof request template when the accepted credentials are changed by a configuration refresh.
+     */
+    @EventListener
+    public void onEnvironmentChange(EnvironmentChangeEvent event) {
+        if (event.getKeys().stream().noneMatch(key -> key.startsWith(AGENT_PROPERTIES))) {
+            return;
+        }
+        masterIdCredDefIdsString = environment.getProperty(MASTER_ID_CRED_DEF_IDS, masterIdCredDefIdsString);
+        corporateIdSchemaIdsString = environment.getProperty(CORPORATE_ID_SCHEMA_IDS, corporateIdSchemaIdsString);
+        corporateIdIssuerDidsString = environment.getProperty(CORPORATE_ID_ISSUER_DIDS, corporateIdIssuerDidsString);
+        LOG.info("Agent configuration changed, rebuilding the proof request template");
+        init();
+    }
+
     @Override
     public URI getProofURI(String hotelId, String deskId) {
 
-        // prepare a proof request DTO and send it to the agent
-        ProofRequestDTO connectionlessProofCreationRequest = prepareConnectionlessProofRequest();
-        ProofResponseDTO proofResponseDTO = acapyClient.createProofRequest(apikey,
-            connectionlessProofCreationRequest);
+        // use a proof request created ahead of time, or prepare a proof request DTO and send it to the agent
+        ProofResponseDTO proofResponseDTO = proofRequestPool.take();
+        if (proofResponseDTO == null) {
+            proofResponseDTO = acapyClient.createProofRequest(apikey, prepareConnectionlessProofRequest());
+        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("agent created a proof request: {}", proofResponseDTO);
         }
@@ -104,21 +144,15 @@ public class ProofServiceImpl implements ProofService {
         ConnectionlessProofRequest connectionlessProofRequest = prepareConnectionlessProofRequest(proofResponseDTO);
 
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            String msg = mapper.writeValueAsString(connectionlessProofRequest);
             if (LOG.isDebugEnabled()) {
-                LOG.debug(msg);
+                LOG.debug(proofUriEncoder.toJson(connectionlessProofRequest));
             }
 
-            // Base64 encode the connectionless proof request
-            String encodedUrl = Base64.getEncoder()
-                .encodeToString(msg.getBytes());
-
-            // return a URI that is consumable by the wallet app
-            return URI.create(DIDCOMM_URL + encodedUrl);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            throw new RuntimeException();
+            // return a URI with the Base64 encoded connectionless proof request that is consumable by the wallet app
+            return proofUriEncoder.encode(connectionlessProofRequest);
+        } catch (IOException e) {
+            LOG.error("Could not encode the connectionless proof request", e);
+            throw new RuntimeException(e);
         }
 
     }
@@ -162,76 +196,24 @@ public class ProofServiceImpl implements ProofService {
     }
 
     private ProofRequestDTO prepareConnectionlessProofRequest() {
-
-        RequestedPredicates requestedPredicates = new RequestedPredicates();
-        RequestedAttributes requestedAttributes = new RequestedAttributes();
-        requestedAttributes.setMasterId(this.createMasterIdAttributes());
-//        requestedAttributes.setSelfAttested(this.createSelfAttestedAttributes());
-        requestedAttributes.setCorporateId(this.createCorporateIdAttributes());
-
-        // Composing the proof request
-        ProofRequest proofRequest = new ProofRequest();
-        proofRequest.setName("Proof request");
-        proofRequest.setRequestedPredicates(requestedPredicates);
-        proofRequest.setRequestedAttributes(requestedAttributes);
-        proofRequest.setVersion("0.1");
-        proofRequest.setNonce(generateNonce(80));
-
-        ProofRequestDTO connectionlessProofCreationRequest = new ProofRequestDTO();
-        connectionlessProofCreationRequest.setComment("string"); // TODO: Do we use the comment field?
+        ProofRequestDTO connectionlessProofCreationRequest = proofRequestTemplate.createProofRequest(nonceGenerator.nextNonce(),
+            (int) Instant.now().getEpochSecond());
 
         // Debug
         if (LOG.isDebugEnabled()) {
-            LOG.debug(ReflectionToStringBuilder.toString(proofRequest));
+            LOG.debug(ReflectionToStringBuilder.toString(connectionlessProofCreationRequest.getProofRequest()));
         }
 
-        connectionlessProofCreationRequest.setProofRequest(proofRequest);
-
         return connectionlessProofCreationRequest;
     }
 
     /**
-     * Generate a decimal nonce, using SecureRandom and DRBG algorithm
+     * Generate a decimal nonce, using the shared DRBG of the {@link NonceGenerator}
      * @param numberOfBits The length of the nonce in bit
      * @return A string representation of the nonce
      */
     public String generateNonce(int numberOfBits) {
-        byte[] nonce = new byte[numberOfBits / 8];
-        try {
-            SecureRandom rand = SecureRandom.getInstance("DRBG",
-                DrbgParameters.instantiation(128, RESEED_ONLY, null));
-            rand.nextBytes(nonce);
-        } catch (NoSuchAlgorithmException e) {
-            LOG.error("Error during nonce generation", e);
-        }
-
-        return new BigInteger(nonce).toString();
-    }
-
-    private ProofRequestProperty createMasterIdAttributes() {
-        // Restriction regarding CredDefs for masterId
-        String[] masterIdCredDefIds = masterIdCredDefIdsString.split(",");
-        List<Map<String, String>> masterIdRestrictions = new ArrayList<>(masterIdCredDefIds.length);
-        for (String masterIdCredDefId : masterIdCredDefIds) {
-            Map<String, String> temp = new HashMap<>();
-            temp.put("cred_def_id", masterIdCredDefId);
-            masterIdRestrictions.add(temp);
-        }
-
-        ProofRequestProperty proofRequestMasterId = new ProofRequestProperty();
-        List<String> names = Arrays.asList(
-            "firstName", "familyName", "addressStreet", "addressZipCode", "addressCountry", "addressCity",
-            "dateOfExpiry", "dateOfBirth", "hardwareDid");
-        proofRequestMasterId.setNames(names);
-
-        // Restriction regarding Revocation
-        NonRevokedRestriction nonRevokedRestriction = new NonRevokedRestriction();
-        nonRevokedRestriction.setFrom(0);
-        nonRevokedRestriction.setTo((int) Instant.now().getEpochSecond());
-
-        proofRequestMasterId.setNonRevokedRestriction(nonRevokedRestriction);
-        proofRequestMasterId.setRestrictions(masterIdRestrictions);
-        return proofRequestMasterId;
+        return nonceGenerator.generate(numberOfBits);
     }
 
     private ProofRequestSelfAttestedProperty createSelfAttestedAttributes() {
@@ -245,34 +227,6 @@ public class ProofServiceImpl implements ProofService {
         return proofRequestSelfAttested;
     }
 
-    private ProofRequestProperty createCorporateIdAttributes() {
-
-        // Restriction regarding schemas for corporateId
-        String[] corporateIdSchemaIds = corporateIdSchemaIdsString.split(",");
-        String[] corporateIdIssuerDids = corporateIdIssuerDidsString.split(",");
-        List<Map<String, String>> corporateIdRestrictions = new ArrayList<>();
-        for (String schemaID : corporateIdSchemaIds) {
-            for (String issuerDID : corporateIdIssuerDids) {
-                Map<String, String> temp = new HashMap<>();
-                temp.put("schema_id", schemaID);
-                temp.put("issuer_did", issuerDID);
-                corporateIdRestrictions.add(temp);
-            }
-        }
-
-        // Restriction regarding Revocation
-        NonRevokedRestriction nonRevokedRestriction = new NonRevokedRestriction();
-        nonRevokedRestriction.setFrom(0);
-        nonRevokedRestriction.setTo((int) Instant.now().getEpochSecond());
-
-        ProofRequestProperty proofRequestCorporateId = new ProofRequestProperty();
-        List<String> names = Arrays.asList("firmCity", "firmStreet", "firmPostalcode", "firmName", "firmSubject", "firstName", "lastName");
-        proofRequestCorporateId.setNames(names);
-        proofRequestCorporateId.setNonRevokedRestriction(nonRevokedRestriction);
-        proofRequestCorporateId.setRestrictions(corporateIdRestrictions);
-        return proofRequestCorporateId;
-    }
-
     @Override
     public void handleProofWebhook(WebhookPresentProofDTO webhookPresentProofDTO) {
 
@@ -285,29 +239,39 @@ public class ProofServiceImpl implements ProofService {
         if (Objects.equals(webhookPresentProofDTO.getState(), "verified")) {
             handleVerified(webhookPresentProofDTO, presentationExchangeId);
         } else if (Objects.equals(webhookPresentProofDTO.getState(), "presentation_received")) {
-            handlePresentationReceived(presentationExchangeId);
+            handlePresentationReceived(webhookPresentProofDTO, presentationExchangeId);
         } else if (LOG.isDebugEnabled()) {
             LOG.debug("ignore this state: {}", webhookPresentProofDTO.getState());
         }
     }
 
-    private void handlePresentationReceived(String presentationExchangeId) {
+    private void handlePresentationReceived(WebhookPresentProofDTO webhookPresentProofDTO, String presentationExchangeId) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Update mongodb entry and delete information from agent");
-            LOG.debug("Getting presentation information from the agent");
         }
 
-        // get the proof record from the agent
-        ProofRecordDTO proofRecordDTO = acapyClient.getProofRecord(apikey, presentationExchangeId);
+        // the webhook carries the presentation, get the proof record from the agent only if it is incomplete
+        Presentation presentation = webhookPresentProofDTO.getPresentation();
+        if (!hasRevealedAttributes(presentation)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Getting presentation information from the agent");
+            }
+            ProofRecordDTO proofRecordDTO = acapyClient.getProofRecord(apikey, presentationExchangeId);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(proofRecordDTO.toString());
+            }
+            presentation = proofRecordDTO.getPresentation();
+        }
+        RevealedAttrGroups revealedAttrGroups = presentation.getRequestedProof().getRevealedAttrGroups();
 
         // construct a corporateId out of the proof
-        CorporateIdDTO corporateId = createCorporateIdDTO(proofRecordDTO);
+        CorporateIdDTO corporateId = createCorporateIdDTO(revealedAttrGroups);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Created corporate id: {}", corporateId);
         }
 
         // construct a masterId out of the proof
-        MasterIdDTO masterId = createMasterIdDTO(proofRecordDTO);
+        MasterIdDTO masterId = createMasterIdDTO(revealedAttrGroups);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Created master id: {}", masterId);
         }
@@ -325,27 +289,31 @@ public class ProofServiceImpl implements ProofService {
         boolean proofVerified = webhookPresentProofDTO.getVerified() != null
             && webhookPresentProofDTO.getVerified().equals("true");
         try {
-            CheckInCredential checkInCredential = checkInCredentialService.updateValidity(presentationExchangeId,
-                proofVerified);
-            // inform subscribers about the new checkin credential
-            notificationService.sendNotificationAboutNewCheckinCredentials(checkInCredential.getHotelId(),
-                checkInCredential.getDeskId());
+            // updating the validity also informs the subscribers about the checkin credential
+            checkInCredentialService.updateValidity(presentationExchangeId, proofVerified);
         } catch (CheckinCredentialNotFoundException e) {
             // log but do not rethrow
             LOG.error("A matching CheckInCredential was not found", e);
         } finally {
-            // Delete proof presentation info from agent
-            acapyClient.deleteProofRecord(apikey, presentationExchangeId);
+            // Delete proof presentation info from agent in the background
+            proofRecordCleaner.scheduleDeletion(presentationExchangeId);
         }
     }
 
-    private MasterIdDTO createMasterIdDTO(ProofRecordDTO proofRecordDTO) {
-        MasterIdDTO masterId = new MasterIdDTO();
-        if (LOG.isDebugEnabled()) {
-            LOG.debug(proofRecordDTO.toString());
+    private static boolean hasRevealedAttributes(Presentation presentation) {
+        if (presentation == null || presentation.getRequestedProof() == null) {
+            return false;
         }
+        RevealedAttrGroups revealedAttrGroups = presentation.getRequestedProof().getRevealedAttrGroups();
+        return revealedAttrGroups != null
+            && revealedAttrGroups.getMasterId() != null && revealedAttrGroups.getMasterId().getValues() != null
+            && revealedAttrGroups.getCorporateId() != null && revealedAttrGroups.getCorporateId().getValues() != null;
+    }
+
+    private MasterIdDTO createMasterIdDTO(RevealedAttrGroups revealedAttrGroups) {
+        MasterIdDTO masterId = new MasterIdDTO();
 
-        RevealedAttrValuesMasterId values = proofRecordDTO.getPresentation().getRequestedProof().getRevealedAttrGroups().getMasterId().getValues();
+        RevealedAttrValuesMasterId values = revealedAttrGroups.getMasterId().getValues();
         masterId.setFirstName(values.getFirstName().getRaw());
         masterId.setFamilyName(values.getFamilyName().getRaw());
         masterId.setAddressStreet(values.getAddressStreet().getRaw());
@@ -359,14 +327,10 @@ public class ProofServiceImpl implements ProofService {
         return masterId;
     }
 
-    private CorporateIdDTO createCorporateIdDTO(ProofRecordDTO proofRecordDTO) {
+    private CorporateIdDTO createCorporateIdDTO(RevealedAttrGroups revealedAttrGroups) {
         CorporateIdDTO corporateId = new CorporateIdDTO();
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug(proofRecordDTO.toString());
-        }
-
-        RevealedAttrValuesCorporateId values = proofRecordDTO.getPresentation().getRequestedProof().getRevealedAttrGroups().getCorporateId().getValues();
+        RevealedAttrValuesCorporateId values = revealedAttrGroups.getCorporateId().getValues();
         corporateId.setFirstName(values.getFirstName().getRaw());
         corporateId.setFamilyName(values.getLastName().getRaw());
         corporateId.setCompanyName(values.getFirmName().getRaw());
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.ibm.ssi.controller.hotel.client.model.ConnectionlessProofRequest;
+
+/**
+ * Encodes connectionless proof requests into {@code didcomm://} URIs consumable by the wallet app.
+ * <p>
+ * The JSON is streamed through a Base64 encoder into a per-thread buffer which already holds the URI prefix, so the
+ * request is neither materialized as a JSON string nor as a byte array.
+ */
+final class ProofUriEncoder {
+
+    static final String DIDCOMM_URL = "didcomm://example.org?m=";
+
+    private static final byte[] DIDCOMM_URL_BYTES = DIDCOMM_URL.getBytes(StandardCharsets.US_ASCII);
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    // buffers which grew beyond this size for an unusually large request are not kept
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectWriter writer;
+
+    private final ThreadLocal<UriBuffer> buffers = ThreadLocal.withInitial(UriBuffer::new);
+
+    ProofUriEncoder(ObjectMapper objectMapper) {
+        this.writer = objectMapper.writerFor(ConnectionlessProofRequest.class)
+            .without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    URI encode(ConnectionlessProofRequest connectionlessProofRequest) throws IOException {
+        UriBuffer buffer = buffers.get();
+        buffer.reset();
+        buffer.write(DIDCOMM_URL_BYTES);
+        try (OutputStream base64 = Base64.getEncoder().wrap(buffer)) {
+            writer.writeValue(base64, connectionlessProofRequest);
+        }
+
+        URI uri = URI.create(buffer.toAsciiString());
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+        return uri;
+    }
+
+    String toJson(ConnectionlessProofRequest connectionlessProofRequest) throws IOException {
+        return writer.writeValueAsString(connectionlessProofRequest);
+    }
+
+    private static final class UriBuffer extends ByteArrayOutputStream {
+
+        private UriBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+
+        private String toAsciiString() {
+            return new String(buf, 0, count, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.ibm.ssi.controller.hotel.repository.EmitterRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Sends server-sent events to the registered emitters without blocking the caller.
+ * <p>
+ * Every emitter gets a bounded outbound queue which is drained by a dedicated worker pool, at most one worker per
+ * emitter at a time so events keep their order. When the queue of a slow consumer is full the configured
+ * {@link OverflowPolicy} decides whether events are dropped or the emitter is disconnected.
+ * <p>
+ * Idle emitters get a heartbeat comment on the scheduling pool, so connections silently dropped by a proxy or NAT
+ * fail on the next heartbeat and are evicted. Emitters whose client stopped reading are evicted once a send has been
+ * blocked for longer than the send timeout.
+ */
+@Service
+public class SseEventDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SseEventDispatcher.class);
+
+    public enum OverflowPolicy {
+        /** discard the oldest queued event to make room for the new one */
+        DROP_OLDEST,
+        /** discard the new event */
+        DROP_NEWEST,
+        /** complete the emitter, the client is expected to reconnect */
+        DISCONNECT
+    }
+
+    private static final String EVICTED_ON_ERROR = "error";
+
+    private static final String EVICTED_ON_OVERFLOW = "overflow";
+
+    private static final String EVICTED_ON_STALL = "stalled";
+
+    private final EmitterRepository emitterRepository;
+
+    private final MeterRegistry meterRegistry;
+
+    private final TaskScheduler taskScheduler;
+
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    // hotelId -> number of emitters registered for the hotel
+    private final Map<String, AtomicInteger> liveEmitters = new ConcurrentHashMap<>();
+
+    private final ExecutorService workers;
+
+    private final int queueCapacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long heartbeatInterval;
+
+    private final long sendTimeout;
+
+    private final Counter droppedEvents;
+
+    private ScheduledFuture<?> heartbeat;
+
+    public SseEventDispatcher(EmitterRepository emitterRepository, MeterRegistry meterRegistry, TaskScheduler taskScheduler,
+            @Value("${ssibk.hotel.controller.events.dispatch.pool-size:4}") int poolSize,
+            @Value("${ssibk.hotel.controller.events.dispatch.queue-capacity:64}") int queueCapacity,
+            @Value("${ssibk.hotel.controller.events.dispatch.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+            @Value("${ssibk.hotel.controller.events.heartbeat.interval:15000}") long heartbeatInterval,
+            @Value("${ssibk.hotel.controller.events.heartbeat.send-timeout:45000}") long sendTimeout) {
+        this.emitterRepository = emitterRepository;
+        this.meterRegistry = meterRegistry;
+        this.taskScheduler = taskScheduler;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.heartbeatInterval = heartbeatInterval;
+        this.sendTimeout = sendTimeout;
+        this.workers = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("hotel-controller-sse-"));
+
+        Gauge.builder("hotel.controller.sse.queue.depth", outboxes, SseEventDispatcher::queueDepth)
+            .description("Number of events waiting to be sent to desk clients")
+            .register(meterRegistry);
+        Gauge.builder("hotel.controller.sse.emitters", outboxes, Map::size)
+            .description("Number of emitters connected to this node")
+            .register(meterRegistry);
+        this.droppedEvents = Counter.builder("hotel.controller.sse.events.dropped")
+            .description("Number of events dropped because a desk client could not keep up")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (heartbeatInterval > 0) {
+            heartbeat = taskScheduler.scheduleWithFixedDelay(this::heartbeat, Duration.ofMillis(heartbeatInterval));
+        }
+    }
+
+    /**
+     * Registers an emitter for the given desk so it receives dispatched events.
+     */
+    public void register(String uuid, String hotelId, String deskId, SseEmitter emitter) {
+        outboxes.put(uuid, new Outbox(uuid, hotelId, emitter, queueCapacity));
+        liveEmitters(hotelId).incrementAndGet();
+        emitterRepository.addEmitter(uuid, hotelId, deskId, emitter);
+    }
+
+    /**
+     * Removes the emitter and discards all events that were not sent yet.
+     */
+    public void unregister(String uuid) {
+        Outbox outbox = outboxes.remove(uuid);
+        if (outbox != null) {
+            outbox.queue.clear();
+            liveEmitters(outbox.hotelId).decrementAndGet();
+        }
+        emitterRepository.remove(uuid);
+    }
+
+    /**
+     * Sends a heartbeat to idle emitters and evicts emitters whose send is blocked for too long.
+     */
+    void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Outbox outbox : outboxes.values()) {
+            long sendStarted = outbox.sendStarted;
+            if (sendStarted > 0 && now - sendStarted > sendTimeout) {
+                LOG.debug("Emitter {} is blocked for {} ms, evicting", outbox.uuid, now - sendStarted);
+                // the emitter is completed by the worker once the blocked send returns
+                outbox.evicted = true;
+                evict(outbox, EVICTED_ON_STALL);
+            } else if (outbox.queue.isEmpty() && now - outbox.lastSent >= heartbeatInterval) {
+                // a dead connection makes the heartbeat fail, the emitter is evicted by the worker
+                dispatch(outbox.uuid, SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    /**
+     * Queues an event for the emitter with the given uuid and returns immediately.
+     *
+     * @param uuid  the uuid the emitter was registered with.
+     * @param event a builder exclusively used for this emitter.
+     * @return {@code false} if the event was not queued.
+     */
+    public boolean dispatch(String uuid, SseEmitter.SseEventBuilder event) {
+        Outbox outbox = outboxes.get(uuid);
+        if (outbox == null) {
+            LOG.debug("No outbox for emitter {}, event is discarded", uuid);
+            return false;
+        }
+
+        if (!outbox.queue.offer(event) && !handleOverflow(outbox, event)) {
+            return false;
+        }
+
+        schedule(outbox);
+        return true;
+    }
+
+    private boolean handleOverflow(Outbox outbox, SseEmitter.SseEventBuilder event) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                // the worker may have drained the queue meanwhile, so a failed poll is fine
+                if (outbox.queue.poll() != null) {
+                    droppedEvents.increment();
+                }
+                if (outbox.queue.offer(event)) {
+                    return true;
+                }
+                droppedEvents.increment();
+                return false;
+            case DISCONNECT:
+                LOG.debug("Outbound queue of emitter {} is full, disconnecting", outbox.uuid);
+                droppedEvents.increment(outbox.queue.size() + 1d);
+                disconnect(outbox, null, EVICTED_ON_OVERFLOW);
+                return false;
+            case DROP_NEWEST:
+            default:
+                droppedEvents.increment();
+                return false;
+        }
+    }
+
+    private void schedule(Outbox outbox) {
+        if (outbox.scheduled.compareAndSet(false, true)) {
+            workers.execute(() -> drain(outbox));
+        }
+    }
+
+    private void drain(Outbox outbox) {
+        do {
+            SseEmitter.SseEventBuilder event;
+            while ((event = outbox.queue.poll()) != null) {
+                try {
+                    outbox.sendStarted = System.currentTimeMillis();
+                    outbox.emitter.send(event);
+                    outbox.lastSent = System.currentTimeMillis();
+                } catch (IOException | IllegalStateException e) {
+                    LOG.debug("Error while sending event to emitter {} - exception: {}", outbox.uuid, e.toString());
+                    disconnect(outbox, e, EVICTED_ON_ERROR);
+                    outbox.scheduled.set(false);
+                    return;
+                } finally {
+                    outbox.sendStarted = 0;
+                }
+                if (outbox.evicted) {
+                    disconnect(outbox, null, EVICTED_ON_STALL);
+                    outbox.scheduled.set(false);
+                    return;
+                }
+            }
+            outbox.scheduled.set(false);
+            // an event may have been queued between the last poll and resetting the flag
+        } while (!outbox.queue.isEmpty() && outbox.scheduled.compareAndSet(false, true));
+    }
+
+    private void disconnect(Outbox outbox, Exception cause, String reason) {
+        evict(outbox, reason);
+        try {
+            if (cause == null) {
+                outbox.emitter.complete();
+            } else {
+                outbox.emitter.completeWithError(cause);
+            }
+        } catch (IllegalStateException e) {
+            LOG.trace("Emitter {} was already completed", outbox.uuid, e);
+        }
+    }
+
+    private void evict(Outbox outbox, String reason) {
+        if (outboxes.remove(outbox.uuid, outbox)) {
+            liveEmitters(outbox.hotelId).decrementAndGet();
+            Counter.builder("hotel.controller.sse.emitters.evicted")
+                .description("Number of emitters evicted because of send errors, overflow or blocked sends")
+                .tag("hotelId", outbox.hotelId)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        }
+        outbox.queue.clear();
+        emitterRepository.remove(outbox.uuid);
+    }
+
+    private AtomicInteger liveEmitters(String hotelId) {
+        return liveEmitters.computeIfAbsent(hotelId, id -> {
+            AtomicInteger live = new AtomicInteger();
+            Gauge.builder("hotel.controller.sse.emitters.live", live, AtomicInteger::get)
+                .description("Number of emitters connected to this node per hotel")
+                .tag("hotelId", id)
+                .register(meterRegistry);
+            return live;
+        });
+    }
+
+    private static double queueDepth(Map<String, Outbox> outboxes) {
+        long depth = 0;
+        for (Outbox outbox : outboxes.values()) {
+            depth += outbox.queue.size();
+        }
+        return depth;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    private static final class Outbox {
+
+        private final String uuid;
+
+        private final String hotelId;
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // start of the send in progress, 0 if the worker is not sending
+        private volatile long sendStarted;
+
+        private volatile long lastSent = System.currentTimeMillis();
+
+        private volatile boolean evicted;
+
+        private Outbox(String uuid, String hotelId, SseEmitter emitter, int capacity) {
+            this.uuid = uuid;
+            this.hotelId = hotelId;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
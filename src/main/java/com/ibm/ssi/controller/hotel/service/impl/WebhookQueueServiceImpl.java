@@ -0,0 +1,307 @@
+/*
+ * Copyright 2021 Bundesrepublik Deutschland
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.ibm.ssi.controller.hotel.domain.WebhookEvent;
+import com.ibm.ssi.controller.hotel.service.ProofService;
+import com.ibm.ssi.controller.hotel.service.WebhookQueueService;
+import com.ibm.ssi.controller.hotel.service.dto.WebhookPresentProofDTO;
+import com.mongodb.client.result.UpdateResult;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Acknowledges webhooks of the agent as soon as they are stored in MongoDB and processes them in the background.
+ * <p>
+ * Events are distributed over single threaded lanes by their presentation exchange, so the webhooks of one exchange
+ * are processed one after the other in the order they were received, e.g. {@code presentation_received} before
+ * {@code verified}. A {@code verified} event whose {@code presentation_received} event is still pending is deferred
+ * until that one is processed. Events which were not processed in time, because processing failed, the lane was full or the node
+ * went down, are claimed again by the periodic redelivery of any node until the maximum number of attempts is reached.
+ * A lane renews the claim when it starts processing an event and skips the event if another node claimed it meanwhile.
+ */
+@Service
+public class WebhookQueueServiceImpl implements WebhookQueueService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookQueueServiceImpl.class);
+
+    // a webhook in this state is only processed after the webhook in the preceding state
+    private static final String VERIFIED = "verified";
+
+    private static final String PRESENTATION_RECEIVED = "presentation_received";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ProofService proofService;
+
+    private final long redeliveryDelay;
+
+    private final int maxAttempts;
+
+    private final ThreadPoolExecutor[] lanes;
+
+    // ids of the events queued or processed by this node -> claim of this node
+    private final Map<String, Date> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter enqueued;
+
+    private final Counter duplicates;
+
+    private final Counter processed;
+
+    private final Counter failed;
+
+    private final Counter abandoned;
+
+    private final Counter deferred;
+
+    private final Timer lag;
+
+    public WebhookQueueServiceImpl(MongoTemplate mongoTemplate, ProofService proofService, MeterRegistry meterRegistry,
+            @Value("${ssibk.hotel.controller.webhook.workers:4}") int workers,
+            @Value("${ssibk.hotel.controller.webhook.queue-capacity:10000}") int queueCapacity,
+            @Value("${ssibk.hotel.controller.webhook.redelivery-delay:60000}") long redeliveryDelay,
+            @Value("${ssibk.hotel.controller.webhook.max-attempts:5}") int maxAttempts) {
+        this.mongoTemplate = mongoTemplate;
+        this.proofService = proofService;
+        this.redeliveryDelay = redeliveryDelay;
+        this.maxAttempts = maxAttempts;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("hotel-controller-webhook-");
+        this.lanes = new ThreadPoolExecutor[Math.max(workers, 1)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(queueCapacity / lanes.length, 1)), threadFactory);
+        }
+
+        Gauge.builder("hotel.controller.webhook.queue.depth", lanes, WebhookQueueServiceImpl::getQueueDepth)
+            .description("Number of webhooks waiting to be processed by this node")
+            .register(meterRegistry);
+        this.enqueued = Counter.builder("hotel.controller.webhook.received")
+            .description("Number of webhooks received from the agent")
+            .tag("result", "enqueued")
+            .register(meterRegistry);
+        this.duplicates = Counter.builder("hotel.controller.webhook.received")
+            .description("Number of webhooks received from the agent")
+            .tag("result", "duplicate")
+            .register(meterRegistry);
+        this.processed = Counter.builder("hotel.controller.webhook.processed")
+            .description("Number of attempts to process a webhook")
+            .tag("result", "success")
+            .register(meterRegistry);
+        this.failed = Counter.builder("hotel.controller.webhook.processed")
+            .description("Number of attempts to process a webhook")
+            .tag("result", "failure")
+            .register(meterRegistry);
+        this.abandoned = Counter.builder("hotel.controller.webhook.processed")
+            .description("Number of attempts to process a webhook")
+            .tag("result", "abandoned")
+            .register(meterRegistry);
+        this.deferred = Counter.builder("hotel.controller.webhook.processed")
+            .description("Number of attempts to process a webhook")
+            .tag("result", "deferred")
+            .register(meterRegistry);
+        this.lag = Timer.builder("hotel.controller.webhook.lag")
+            .description("Time between receiving a webhook and starting to process it")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        // events of a previous run of this node are redelivered once their claim expired
+        redeliver();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            // queued events stay unprocessed in MongoDB and are redelivered
+            lane.shutdownNow();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public boolean enqueue(WebhookPresentProofDTO webhookPresentProofDTO) {
+        WebhookEvent event = new WebhookEvent(webhookPresentProofDTO);
+        try {
+            mongoTemplate.insert(event);
+        } catch (DuplicateKeyException e) {
+            LOG.debug("Ignoring webhook {} which was already received", event.getId());
+            duplicates.increment();
+            return false;
+        }
+        enqueued.increment();
+        dispatch(event);
+        return true;
+    }
+
+    /**
+     * Claims the events whose processing did not finish in time and dispatches them again.
+     */
+    @Scheduled(initialDelayString = "${ssibk.hotel.controller.webhook.redelivery-interval:10000}",
+        fixedDelayString = "${ssibk.hotel.controller.webhook.redelivery-interval:10000}")
+    public void redeliver() {
+        List<WebhookEvent> claimed = new ArrayList<>();
+        WebhookEvent event;
+        while (getQueueDepth(lanes) + claimed.size() < getQueueCapacity() && (event = claimNextOverdue()) != null) {
+            claimed.add(event);
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        LOG.info("Redelivering {} webhooks which were not processed in time", claimed.size());
+        claimed.sort((a, b) -> a.getReceivedAt().compareTo(b.getReceivedAt()));
+        for (WebhookEvent overdue : claimed) {
+            // an event still queued on this node is processed with the new claim
+            if (inFlight.replace(overdue.getId(), overdue.getClaimedAt()) == null) {
+                dispatch(overdue);
+            }
+        }
+    }
+
+    private WebhookEvent claimNextOverdue() {
+        Date now = new Date();
+        Query query = new Query(Criteria.where("processedAt").is(null)
+            .and("claimedAt").lt(new Date(now.getTime() - redeliveryDelay)))
+            .with(Sort.by("claimedAt"));
+        return mongoTemplate.findAndModify(query, new Update().set("claimedAt", now),
+            FindAndModifyOptions.options().returnNew(true), WebhookEvent.class);
+    }
+
+    private void dispatch(WebhookEvent event) {
+        inFlight.put(event.getId(), event.getClaimedAt());
+        try {
+            lanes[Math.floorMod(event.getPresentationExchangeId().hashCode(), lanes.length)]
+                .execute(() -> process(event));
+        } catch (RejectedExecutionException e) {
+            // the event is redelivered once its claim expired
+            LOG.warn("Webhook queue is full, delaying webhook {}", event.getId());
+            inFlight.remove(event.getId());
+        }
+    }
+
+    private void process(WebhookEvent event) {
+        lag.record(System.currentTimeMillis() - event.getReceivedAt().getTime(), TimeUnit.MILLISECONDS);
+        try {
+            if (!renewClaim(event)) {
+                LOG.debug("Skipping webhook {} which was claimed by another node", event.getId());
+                return;
+            }
+            if (isPredecessorPending(event)) {
+                // e.g. processing presentation_received failed, both are redelivered in order
+                LOG.debug("Deferring webhook {} until the preceding webhook is processed", event.getId());
+                deferred.increment();
+                return;
+            }
+            proofService.handleProofWebhook(event.getPayload());
+            processed.increment();
+            markProcessed(event);
+        } catch (RuntimeException e) {
+            failed.increment();
+            int attempts = event.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                LOG.error("Giving up processing webhook {} after {} attempts", event.getId(), attempts, e);
+                abandoned.increment();
+                markProcessed(event);
+            } else {
+                LOG.warn("Could not process webhook {}, it is redelivered: {}", event.getId(), e.toString());
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(event.getId())),
+                    new Update().set("attempts", attempts), WebhookEvent.class);
+            }
+        } finally {
+            inFlight.remove(event.getId());
+        }
+    }
+
+    /**
+     * Renews the claim of this node, the event may have waited in the lane longer than the redelivery delay.
+     *
+     * @return whether the event is still claimed by this node.
+     */
+    private boolean renewClaim(WebhookEvent event) {
+        Date claimedAt = inFlight.get(event.getId());
+        UpdateResult result = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(event.getId())
+                .and("processedAt").is(null)
+                .and("claimedAt").is(claimedAt)),
+            new Update().set("claimedAt", new Date()), WebhookEvent.class);
+        return result.getMatchedCount() > 0;
+    }
+
+    private boolean isPredecessorPending(WebhookEvent event) {
+        if (!VERIFIED.equals(event.getState())) {
+            return false;
+        }
+        return mongoTemplate.exists(Query.query(
+            Criteria.where("_id").is(WebhookEvent.createId(event.getPresentationExchangeId(), PRESENTATION_RECEIVED))
+                .and("processedAt").is(null)), WebhookEvent.class);
+    }
+
+    private void markProcessed(WebhookEvent event) {
+        // the payload contains personal data which is not needed anymore to detect duplicates
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(event.getId())),
+            new Update().set("processedAt", new Date()).unset("payload"), WebhookEvent.class);
+    }
+
+    private int getQueueCapacity() {
+        int capacity = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            capacity += lane.getQueue().size() + lane.getQueue().remainingCapacity();
+        }
+        return capacity;
+    }
+
+    private static int getQueueDepth(ThreadPoolExecutor[] lanes) {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+}
@@ -24,22 +24,29 @@ import com.ibm.ssi.controller.hotel.security.AuthoritiesConstants;
 import com.ibm.ssi.controller.hotel.service.CheckInCredentialService;
 import com.ibm.ssi.controller.hotel.service.EmitterService;
 import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialDTO;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialSummaryDTO;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialSummaryPageDTO;
 import com.ibm.ssi.controller.hotel.service.exceptions.CannotFindMyHotelException;
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidCursorException;
+import com.ibm.ssi.controller.hotel.web.rest.errors.BadRequestAlertException;
 import io.github.jhipster.web.util.ResponseUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 /**
  * REST controller for managing checkIn credentials.
@@ -51,6 +58,12 @@ public class CheckInCredentialController {
 
     private static final Logger LOG = LoggerFactory.getLogger(CheckInCredentialController.class);
 
+    private static final String ENTITY_NAME = "checkInCredential";
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final CheckInCredentialService checkInCredentialService;
 
     private final EmitterService emitterService;
@@ -61,20 +74,40 @@ public class CheckInCredentialController {
     }
 
     /**
-     * {@code GET  /checkin-credentials} : get the checkin-credentials.
+     * {@code GET  /checkin-credentials} : get a page of the checkin-credentials of a desk, ordered by scan date.
      *
-     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the list
-     * of checkin-credentials in body.
+     * @param cursor the cursor of the page, omitted for the first page.
+     * @param size   the maximum number of checkin-credentials of the page.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the summaries
+     * of the checkin-credentials in body, the next page is linked in the {@code Link} header.
      * @throws CannotFindMyHotelException
-     * @throws Exception
      */
     @GetMapping("/checkin-credentials")
     @PreAuthorize("hasAuthority(\"" + AuthoritiesConstants.USER + "\")")
     @Operation(security = @SecurityRequirement(name = "bearerAuth"))
-    public ResponseEntity<List<CheckInCredentialDTO>> getCheckInDesk(@RequestParam("deskId") String deskId) throws CannotFindMyHotelException {
+    public ResponseEntity<List<CheckInCredentialSummaryDTO>> getCheckInDesk(@RequestParam("deskId") String deskId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size) throws CannotFindMyHotelException {
         LOG.debug("REST request to get checkin-credential");
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestAlertException("The size must be between 1 and " + MAX_PAGE_SIZE, ENTITY_NAME, "invalidsize");
+        }
+
+        CheckInCredentialSummaryPageDTO page;
+        try {
+            page = this.checkInCredentialService.getDeskCredentials(deskId, cursor, size);
+        } catch (InvalidCursorException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidcursor");
+        }
 
-        return ResponseEntity.ok(this.checkInCredentialService.getDeskCredentials(deskId));
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", page.getNextCursor())
+                .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
     /**
@@ -93,14 +126,22 @@ public class CheckInCredentialController {
         return ResponseUtil.wrapOrNotFound(checkInCredentialDTO);
     }
 
+    /**
+     * {@code GET  /checkin-credentials/subscribe} : subscribe to the events of a desk.
+     *
+     * @param lastEventId the id of the last event the client received, sent by the browser when it reconnects.
+     * @return the event stream, starting with the events the client missed if they are still available.
+     */
     @GetMapping("/checkin-credentials/subscribe")
     public SseEmitter subscribeToEvents(@RequestParam("hotelId") String hotelId,
-            @RequestParam("deskId") String deskId, HttpServletResponse response) {
-        LOG.debug("Subscribing with hotelId {} and deskId {}", hotelId, deskId);
+            @RequestParam("deskId") String deskId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            HttpServletResponse response) {
+        LOG.debug("Subscribing with hotelId {} and deskId {} after event {}", hotelId, deskId, lastEventId);
         response.addHeader("X-Accel-Buffering", "no");
         response.addHeader("Cache-Control", "no-cache");
         response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
 
-        return emitterService.createEmitter(hotelId, deskId);
+        return emitterService.createEmitter(hotelId, deskId, lastEventId);
    }
 }
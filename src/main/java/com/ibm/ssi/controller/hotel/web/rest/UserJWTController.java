@@ -16,8 +16,6 @@
 
 package com.ibm.ssi.controller.hotel.web.rest;
 
-import java.io.UnsupportedEncodingException;
-
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,6 +29,7 @@ import com.ibm.ssi.controller.hotel.security.jwt.JWTFilter;
 import com.ibm.ssi.controller.hotel.security.jwt.TokenProvider;
 import com.ibm.ssi.controller.hotel.service.JWTTokenService;
 import com.ibm.ssi.controller.hotel.service.dto.JWTTokenDTO;
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidJWTTokenException;
 import com.ibm.ssi.controller.hotel.service.exceptions.JWTTokenAlreadyBlacklisted;
 import com.ibm.ssi.controller.hotel.service.impl.LoginAttemptService;
 import com.ibm.ssi.controller.hotel.web.rest.vm.LoginVM;
@@ -84,7 +83,7 @@ public class UserJWTController {
     }
 
     @PostMapping("/authenticate")
-    public ResponseEntity<JWTToken> authorize(@Valid @RequestBody LoginVM loginVM) throws UnsupportedEncodingException {
+    public ResponseEntity<JWTToken> authorize(@Valid @RequestBody LoginVM loginVM) {
         HttpHeaders httpHeaders = new HttpHeaders();
         String ip = getClientIP();
         Boolean ipBlocked = loginAttemptService.isBlocked(ip);
@@ -109,11 +108,11 @@ public class UserJWTController {
         
         try {
             blacklistedToken = this.jwtTokenService.addToBlacklist(jwtToken);
-        } catch (JWTTokenAlreadyBlacklisted e) {
+        } catch (JWTTokenAlreadyBlacklisted | InvalidJWTTokenException e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
 
-        Cookie secureFgpCookie = WebUtils.getCookie(request, "Secure-Fgp");
+        Cookie secureFgpCookie = WebUtils.getCookie(request, CookieProvider.FINGERPRINT_COOKIE);
         if (secureFgpCookie != null) {
             secureFgpCookie.setMaxAge(0);
             secureFgpCookie.setPath("/");
@@ -123,14 +122,16 @@ public class UserJWTController {
         return new ResponseEntity<JWTTokenDTO>(blacklistedToken, HttpStatus.CREATED);
     }
 
-    private ResponseEntity<JWTToken> authenticate(@Valid @RequestBody LoginVM loginVM, HttpHeaders httpHeaders) throws UnsupportedEncodingException {
+    private ResponseEntity<JWTToken> authenticate(@Valid @RequestBody LoginVM loginVM, HttpHeaders httpHeaders) {
         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(loginVM.getUsername(), loginVM.getPassword());
         Authentication authentication = authenticationManagerBuilder.getObject().authenticate(authenticationToken);
         SecurityContextHolder.getContext().setAuthentication(authentication);
         boolean rememberMe = (loginVM.isRememberMe() == null) ? false : loginVM.isRememberMe();
-        String jwt = tokenProvider.createToken(authentication, rememberMe);
+        // the cookie must hold the fingerprint whose hash is in the token
+        String userFingerprint = cookieProvider.generateUserFingerprint();
+        String jwt = tokenProvider.createToken(authentication, rememberMe, userFingerprint);
 
-        httpHeaders.add(JWTFilter.SET_COOKIE_HEADER, cookieProvider.resolveCookieFingerprint());
+        httpHeaders.add(JWTFilter.SET_COOKIE_HEADER, cookieProvider.resolveCookieFingerprint(userFingerprint));
         httpHeaders.add(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
 
         return new ResponseEntity<>(new JWTToken(jwt), httpHeaders, HttpStatus.OK);
@@ -21,6 +21,7 @@ import com.ibm.ssi.controller.hotel.HotelControllerApp;
 import com.ibm.ssi.controller.hotel.client.ACAPYClient;
 import com.ibm.ssi.controller.hotel.service.CheckInCredentialService;
 import com.ibm.ssi.controller.hotel.service.ProofService;
+import com.ibm.ssi.controller.hotel.service.WebhookQueueService;
 import com.ibm.ssi.controller.hotel.service.dto.WebhookPresentProofDTO;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -53,6 +54,9 @@ public class WebhookController {
     @Autowired
     CheckInCredentialService checkInCredentialService;
 
+    @Autowired
+    WebhookQueueService webhookQueueService;
+
     @PostMapping("/present_proof")
     @Operation(security = @SecurityRequirement(name = "X-API-Key"))
     public ResponseEntity<Void> onProofRequestWebhook(@RequestBody WebhookPresentProofDTO webhookPresentProofDTO) throws JsonProcessingException {
@@ -61,7 +65,8 @@ public class WebhookController {
         log.debug("State of the proof: {}", webhookPresentProofDTO.getState());
         log.debug("Proof verified: {}", webhookPresentProofDTO.getVerified());
 
-        this.proofService.handleProofWebhook(webhookPresentProofDTO);
+        // acknowledge as soon as the webhook is stored, it is processed in the background
+        this.webhookQueueService.enqueue(webhookPresentProofDTO);
 
         return ResponseEntity.noContent().build();
     }
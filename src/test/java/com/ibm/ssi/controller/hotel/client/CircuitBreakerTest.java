@@ -0,0 +1,98 @@
+package com.ibm.ssi.controller.hotel.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    AtomicLong clock;
+
+    CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        circuitBreaker = new CircuitBreaker(50, 4, 2, 1000, 2, clock::get);
+    }
+
+    @Test
+    void testStaysClosedBelowMinimumCalls() {
+        call(true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(-1);
+    }
+
+    @Test
+    void testOpensAtFailureRateThreshold() {
+        call(false);
+        call(false);
+        call(true);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        call(true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void testOldCallsLeaveTheWindow() {
+        call(true);
+        call(false);
+        call(false);
+        call(false);
+        call(false);
+
+        assertThat(circuitBreaker.getFailureRate()).isZero();
+    }
+
+    @Test
+    void testClosesAfterSuccessfulTrialCalls() {
+        open();
+        clock.addAndGet(1000);
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        // only the permitted number of trial calls
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(-1);
+    }
+
+    @Test
+    void testReopensAfterFailedTrialCall() {
+        open();
+        clock.addAndGet(1000);
+
+        call(true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        clock.addAndGet(999);
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+    }
+
+    private void open() {
+        call(true);
+        call(true);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void call(boolean failure) {
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+        if (failure) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.ibm.ssi.controller.hotel.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.ssi.controller.hotel.client.model.ProofRecordDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofResponseDTO;
+import feign.FeignException;
+import feign.Request;
+import feign.RetryableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class GuardedACAPYClientTest {
+
+    private static final String APIKEY = "apikey";
+
+    @Mock
+    ACAPYClient delegate;
+
+    SimpleMeterRegistry meterRegistry;
+
+    GuardedACAPYClient acapyClient;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        acapyClient = new GuardedACAPYClient(delegate, meterRegistry, 50, 4, 2, 60000, 1, 1, 0);
+    }
+
+    @Test
+    void testCallsAreDelegated() {
+        ProofResponseDTO proofResponseDTO = new ProofResponseDTO();
+        when(delegate.createProofRequest(eq(APIKEY), any(ProofRequestDTO.class))).thenReturn(proofResponseDTO);
+
+        assertThat(acapyClient.createProofRequest(APIKEY, new ProofRequestDTO())).isSameAs(proofResponseDTO);
+        acapyClient.deleteProofRecord(APIKEY, "id");
+
+        verify(delegate).deleteProofRecord(APIKEY, "id");
+    }
+
+    @Test
+    void testOpenCircuitFailsFast() {
+        when(delegate.getProofRecord(anyString(), anyString())).thenThrow(retryableException());
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> acapyClient.getProofRecord(APIKEY, "id")).isInstanceOf(RetryableException.class);
+        }
+        assertThatThrownBy(() -> acapyClient.getProofRecord(APIKEY, "id")).isInstanceOf(AgentUnavailableException.class);
+
+        verify(delegate, times(2)).getProofRecord(APIKEY, "id");
+        assertThat(meterRegistry.get("hotel.controller.agent.calls.rejected")
+            .tags("operation", GuardedACAPYClient.GET_PROOF_RECORD, "reason", "circuit-open").counter().count()).isEqualTo(1);
+        // an agent outage must not take the controller out of the load balancer
+        Health health = new ACAPYClientHealthIndicator(acapyClient).health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("openCircuitBreakers", 1);
+
+        // the other operations are not affected
+        acapyClient.deleteProofRecord(APIKEY, "id");
+        verify(delegate).deleteProofRecord(APIKEY, "id");
+    }
+
+    @Test
+    void testClientErrorsDoNotOpenTheCircuit() {
+        FeignException notFound = mock(FeignException.class);
+        when(notFound.status()).thenReturn(404);
+        doThrow(notFound).when(delegate).deleteProofRecord(anyString(), anyString());
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> acapyClient.deleteProofRecord(APIKEY, "id")).isSameAs(notFound);
+        }
+
+        assertThat(acapyClient.getCircuitBreakers().get(GuardedACAPYClient.DELETE_PROOF_RECORD).getState())
+            .isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(new ACAPYClientHealthIndicator(acapyClient).health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void testFullBulkheadFailsFast() throws Exception {
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.getProofRecord(anyString(), anyString())).then(invocation -> {
+            inFlight.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new ProofRecordDTO();
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ProofRecordDTO> blocking = executor.submit(() -> acapyClient.getProofRecord(APIKEY, "id"));
+            assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThatThrownBy(() -> acapyClient.getProofRecord(APIKEY, "id")).isInstanceOf(AgentUnavailableException.class);
+            assertThat(meterRegistry.get("hotel.controller.agent.calls.rejected")
+                .tags("operation", GuardedACAPYClient.GET_PROOF_RECORD, "reason", "bulkhead-full").counter().count()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(blocking.get(5, TimeUnit.SECONDS)).isNotNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static RetryableException retryableException() {
+        Request request = Request.create(Request.HttpMethod.GET, "http://agent/present-proof/records/id",
+            Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+        return new RetryableException(-1, "Connection refused", Request.HttpMethod.GET, null, request);
+    }
+}
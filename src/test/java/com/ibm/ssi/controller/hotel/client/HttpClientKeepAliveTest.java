@@ -0,0 +1,48 @@
+package com.ibm.ssi.controller.hotel.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpClientKeepAliveTest {
+
+    private String previous;
+
+    @BeforeEach
+    void setUp() {
+        previous = System.clearProperty(HttpClientKeepAlive.KEEP_ALIVE_PROPERTY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (previous == null) {
+            System.clearProperty(HttpClientKeepAlive.KEEP_ALIVE_PROPERTY);
+        } else {
+            System.setProperty(HttpClientKeepAlive.KEEP_ALIVE_PROPERTY, previous);
+        }
+    }
+
+    @Test
+    void testKeepAliveIsAppliedInSeconds() {
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("ssibk.hotel.controller.http-client.keep-alive", "60000");
+
+        new HttpClientKeepAlive().postProcessEnvironment(environment, null);
+
+        assertThat(System.getProperty(HttpClientKeepAlive.KEEP_ALIVE_PROPERTY)).isEqualTo("60");
+    }
+
+    @Test
+    void testSystemPropertyWins() {
+        System.setProperty(HttpClientKeepAlive.KEEP_ALIVE_PROPERTY, "5");
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("ssibk.hotel.controller.http-client.keep-alive", "60000");
+
+        new HttpClientKeepAlive().postProcessEnvironment(environment, null);
+
+        assertThat(System.getProperty(HttpClientKeepAlive.KEEP_ALIVE_PROPERTY)).isEqualTo("5");
+    }
+}
@@ -0,0 +1,131 @@
+package com.ibm.ssi.controller.hotel.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PooledFeignClientTest {
+
+    private static final Request.Options OPTIONS = new Request.Options(200, TimeUnit.MILLISECONDS, 2000, TimeUnit.MILLISECONDS, true);
+
+    HttpServer server;
+
+    CountDownLatch release;
+
+    SimpleMeterRegistry meterRegistry;
+
+    PooledFeignClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        release = new CountDownLatch(0);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/echo", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            exchange.getResponseHeaders().add("X-Method", exchange.getRequestMethod());
+            if (exchange.getRequestHeaders().containsKey("X-API-KEY")) {
+                exchange.getResponseHeaders().put("X-API-KEY", exchange.getRequestHeaders().get("X-API-KEY"));
+            }
+            exchange.sendResponseHeaders(201, body.length > 0 ? body.length : -1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        client = new PooledFeignClient("TestClient", HttpClient.newHttpClient(), 1, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void testExecute() throws IOException {
+        Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("X-API-KEY", Collections.singletonList("apikey"));
+        headers.put("Content-Length", Collections.singletonList("4"));
+        Request request = request(Request.HttpMethod.POST, headers, "body".getBytes(StandardCharsets.UTF_8));
+
+        Response response = client.execute(request, OPTIONS);
+
+        assertThat(response.status()).isEqualTo(201);
+        assertThat(response.headers().get("X-Method")).containsExactly("POST");
+        assertThat(response.headers().get("X-API-KEY")).containsExactly("apikey");
+        assertThat(Util.toString(response.body().asReader(StandardCharsets.UTF_8))).isEqualTo("body");
+        assertThat(response.request()).isSameAs(request);
+        assertThat(client.getActiveConnections()).isZero();
+    }
+
+    @Test
+    void testRequestFailsIfNoConnectionGetsFree() throws Exception {
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response> blocking = executor.submit(
+                () -> client.execute(request(Request.HttpMethod.GET, Collections.emptyMap(), null), OPTIONS));
+            waitForActiveConnection();
+
+            assertThatThrownBy(() -> client.execute(request(Request.HttpMethod.GET, Collections.emptyMap(), null), OPTIONS))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("No free connection of TestClient");
+            assertThat(meterRegistry.get("hotel.controller.http.client.connections.rejected").tag("client", "TestClient")
+                .counter().count()).isEqualTo(1);
+            assertThat(meterRegistry.get("hotel.controller.http.client.connections.active").tag("client", "TestClient")
+                .gauge().value()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(blocking.get(5, TimeUnit.SECONDS).status()).isEqualTo(201);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void waitForActiveConnection() throws InterruptedException {
+        for (int i = 0; i < 100 && client.getActiveConnections() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(client.getActiveConnections()).isEqualTo(1);
+    }
+
+    private Request request(Request.HttpMethod method, Map<String, Collection<String>> headers, byte[] body) {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/echo";
+        return Request.create(method, url, headers, body, StandardCharsets.UTF_8, null);
+    }
+}
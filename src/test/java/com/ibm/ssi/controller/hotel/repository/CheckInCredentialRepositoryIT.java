@@ -0,0 +1,146 @@
+package com.ibm.ssi.controller.hotel.repository;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.ibm.ssi.controller.hotel.HotelControllerApp;
+import com.ibm.ssi.controller.hotel.config.dbmigrations.CheckInCredentialIndexesMigration;
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Integration tests asserting that the queries of the {@link CheckInCredentialRepository} are served by the indexes
+ * of the {@link CheckInCredentialIndexesMigration}.
+ */
+@SpringBootTest(classes = HotelControllerApp.class)
+public class CheckInCredentialRepositoryIT {
+
+    @Autowired
+    private CheckInCredentialRepository checkInCredentialRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        // other tests drop the collection together with its indexes
+        CheckInCredentialIndexesMigration migration = new CheckInCredentialIndexesMigration();
+        migration.addCheckInCredentialIndexes(mongoTemplate);
+        migration.addCheckInCredentialExpiryIndexes(mongoTemplate);
+        migration.addIdToCheckInCredentialDeskIndex(mongoTemplate);
+        migration.makePresentationExchangeIdIndexPartial(mongoTemplate);
+
+        for (int i = 0; i < 100; i++) {
+            CheckInCredential checkInCredential = new CheckInCredential("hotel", "desk" + i % 10, "exchange" + i);
+            checkInCredential.setScanDate(new Date());
+            if (i % 2 == 0) {
+                checkInCredential.setSendDate(new Date());
+            }
+            checkInCredentialRepository.save(checkInCredential);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        checkInCredentialRepository.deleteAll();
+    }
+
+    @Test
+    public void testFindPageOfSentCheckInCredentialsOfDeskUsesIndex() {
+        // the query of CheckInCredentialServiceImpl.getDeskCredentials for a page after the first one
+        Document filter = Document.parse("{ '$and': [ "
+            + "{ 'hotelId': 'hotel', 'deskId': 'desk2', 'sendDate': { '$exists': true, '$ne': null } }, "
+            + "{ '$or': [ { 'scanDate': { '$gt': { '$date': 0 } } }, "
+            + "{ 'scanDate': { '$date': 0 }, '_id': { '$gt': { '$oid': '000000000000000000000000' } } } ] } ] }");
+
+        List<String> stages = explain(filter, new Document("scanDate", 1).append("_id", 1));
+
+        assertThat(stages).contains("IXSCAN").doesNotContain("COLLSCAN", "SORT");
+    }
+
+    @Test
+    public void testUpdateByPresentationExchangeIdUsesIndex() {
+        // the findAndModify of CheckInCredentialServiceImpl.update
+        Document findAndModify = new Document("findAndModify", mongoTemplate.getCollectionName(CheckInCredential.class))
+            .append("query", Query.query(Criteria.where("presentationExchangeId").is("exchange42")).getQueryObject())
+            .append("update", new Document("$set", new Document("valid", true)))
+            .append("new", true);
+
+        List<String> stages = explain(findAndModify);
+
+        assertThat(stages).contains("IXSCAN").doesNotContain("COLLSCAN");
+    }
+
+    @Test
+    public void testPresentationExchangeIdIsUnique() {
+        assertThatThrownBy(() -> checkInCredentialRepository.save(new CheckInCredential("hotel", "desk", "exchange42")))
+            .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    public void testCheckInCredentialsWithoutPresentationExchangeIdDoNotCollide() {
+        checkInCredentialRepository.save(new CheckInCredential("hotel", "desk", null));
+        checkInCredentialRepository.save(new CheckInCredential("hotel", "desk", null));
+
+        assertThat(checkInCredentialRepository.count()).isEqualTo(102);
+    }
+
+    @Test
+    public void testPartialIndexMigrationFailsOnDuplicatePresentationExchangeIds() {
+        mongoTemplate.indexOps(CheckInCredential.class).dropIndex("presentationExchangeId");
+        checkInCredentialRepository.save(new CheckInCredential("hotel", "desk", "exchange42"));
+
+        assertThatThrownBy(() -> new CheckInCredentialIndexesMigration().makePresentationExchangeIdIndexPartial(mongoTemplate))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("exchange42");
+    }
+
+    /**
+     * @return the stages of the winning plan of the query.
+     */
+    private List<String> explain(Document filter, Document sort) {
+        Document find = new Document("find", mongoTemplate.getCollectionName(CheckInCredential.class))
+            .append("filter", filter);
+        if (sort != null) {
+            find.append("sort", sort);
+        }
+        return explain(find);
+    }
+
+    /**
+     * @return the stages of the winning plan of the command.
+     */
+    private List<String> explain(Document command) {
+        Document explanation = mongoTemplate.executeCommand(new Document("explain", command).append("verbosity", "queryPlanner"));
+
+        List<String> stages = new ArrayList<>();
+        collectStages(explanation.get("queryPlanner", Document.class).get("winningPlan", Document.class), stages);
+        return stages;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectStages(Document plan, List<String> stages) {
+        stages.add(plan.getString("stage"));
+        if (plan.containsKey("inputStage")) {
+            collectStages(plan.get("inputStage", Document.class), stages);
+        }
+        if (plan.containsKey("inputStages")) {
+            for (Document inputStage : (List<Document>) plan.get("inputStages")) {
+                collectStages(inputStage, stages);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.ibm.ssi.controller.hotel.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryEmitterRepositoryTest {
+
+    private InMemoryEmitterRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new InMemoryEmitterRepository();
+    }
+
+    @Test
+    void testFindByHotelIdAndDeskIdOnlyReturnsEmittersOfTopic() {
+        SseEmitter first = new SseEmitter();
+        SseEmitter second = new SseEmitter();
+        SseEmitter otherDesk = new SseEmitter();
+        repository.addEmitter("uuid1", "hotelId", "deskId", first);
+        repository.addEmitter("uuid2", "hotelId", "deskId", second);
+        repository.addEmitter("uuid3", "hotelId", "otherDeskId", otherDesk);
+
+        assertThat(repository.findByHotelIdAndDeskId("hotelId", "deskId"))
+            .containsOnlyKeys("uuid1", "uuid2")
+            .containsValues(first, second);
+        assertThat(repository.findByHotelIdAndDeskId("hotelId", "otherDeskId")).containsOnlyKeys("uuid3");
+        assertThat(repository.findByHotelIdAndDeskId("otherHotelId", "deskId")).isEmpty();
+    }
+
+    @Test
+    void testRemove() {
+        repository.addEmitter("uuid1", "hotelId", "deskId", new SseEmitter());
+        repository.addEmitter("uuid2", "hotelId", "deskId", new SseEmitter());
+
+        repository.remove("uuid1");
+        assertThat(repository.findByHotelIdAndDeskId("hotelId", "deskId")).containsOnlyKeys("uuid2");
+
+        repository.remove("uuid2");
+        repository.remove("unknown");
+        assertThat(repository.findByHotelIdAndDeskId("hotelId", "deskId")).isEmpty();
+    }
+
+    @Test
+    void testRemoveWhileIterating() {
+        repository.addEmitter("uuid1", "hotelId", "deskId", new SseEmitter());
+        repository.addEmitter("uuid2", "hotelId", "deskId", new SseEmitter());
+
+        for (String uuid : repository.findByHotelIdAndDeskId("hotelId", "deskId").keySet()) {
+            repository.remove(uuid);
+        }
+
+        assertThat(repository.findByHotelIdAndDeskId("hotelId", "deskId")).isEmpty();
+    }
+}
@@ -0,0 +1,62 @@
+package com.ibm.ssi.controller.hotel.security.cookie;
+
+import javax.servlet.http.Cookie;
+
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidCookieException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CookieProviderTest {
+
+    private final CookieProvider cookieProvider = new CookieProvider();
+
+    @Test
+    void testValidateCookieAcceptsFingerprintOfToken() throws InvalidCookieException {
+        String userFingerprint = cookieProvider.generateUserFingerprint();
+
+        boolean valid = cookieProvider.validateCookie(request(new Cookie("other", "value"),
+            new Cookie(CookieProvider.FINGERPRINT_COOKIE, userFingerprint)),
+            cookieProvider.resolveUserFingerprintHash(userFingerprint));
+
+        assertThat(valid).isTrue();
+    }
+
+    @Test
+    void testValidateCookieRejectsOtherFingerprint() throws InvalidCookieException {
+        String userFingerprintHash = cookieProvider.resolveUserFingerprintHash(cookieProvider.generateUserFingerprint());
+
+        boolean valid = cookieProvider.validateCookie(
+            request(new Cookie(CookieProvider.FINGERPRINT_COOKIE, cookieProvider.generateUserFingerprint())),
+            userFingerprintHash);
+
+        assertThat(valid).isFalse();
+    }
+
+    @Test
+    void testValidateCookieRejectsMissingFingerprint() throws InvalidCookieException {
+        String userFingerprint = cookieProvider.generateUserFingerprint();
+
+        assertThat(cookieProvider.validateCookie(request(new Cookie("other", userFingerprint)),
+            cookieProvider.resolveUserFingerprintHash(userFingerprint))).isFalse();
+        assertThat(cookieProvider.validateCookie(request(new Cookie(CookieProvider.FINGERPRINT_COOKIE, userFingerprint)),
+            null)).isFalse();
+        assertThatThrownBy(() -> cookieProvider.validateCookie(new MockHttpServletRequest(), "hash"))
+            .isInstanceOf(InvalidCookieException.class);
+    }
+
+    @Test
+    void testResolveCookieFingerprint() {
+        assertThat(cookieProvider.resolveCookieFingerprint("ABC"))
+            .isEqualTo("Secure-Fgp=ABC; SameSite=Strict; HttpOnly; Secure; Path=/");
+    }
+
+    private MockHttpServletRequest request(Cookie... cookies) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookies);
+        return request;
+    }
+}
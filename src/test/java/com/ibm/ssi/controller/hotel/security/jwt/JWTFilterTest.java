@@ -16,12 +16,12 @@
 
 package com.ibm.ssi.controller.hotel.security.jwt;
 
+import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
 import com.ibm.ssi.controller.hotel.security.AuthoritiesConstants;
 import com.ibm.ssi.controller.hotel.security.cookie.CookieProvider;
 
 import io.github.jhipster.config.JHipsterProperties;
-import io.jsonwebtoken.io.Decoders;
-import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -41,10 +41,15 @@ import javax.servlet.http.Cookie;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 public class JWTFilterTest {
 
+    private static final String USER_FINGERPRINT = "33750D67711985F76E8E53D0F85BE4894E480BB60AA0EA828D7CF6B75E3524907E4B391511D027344713E9DE8FC90AAB8185";
+
     private TokenProvider tokenProvider;
     private CookieProvider cookieProvider;
     private JWTFilter jwtFilter;
@@ -52,14 +57,15 @@ public class JWTFilterTest {
     @BeforeEach
     public void setup() {
         JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt()
+            .setBase64Secret("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8");
         cookieProvider = new CookieProvider();
-        tokenProvider = spy(new TokenProvider(jHipsterProperties, cookieProvider));
+        tokenProvider = spy(new TokenProvider(jHipsterProperties, cookieProvider, new SimpleMeterRegistry(), 10000, 60000));
+        tokenProvider.init();
 
-        ReflectionTestUtils.setField(tokenProvider, "key",
-            Keys.hmacShaKeyFor(Decoders.BASE64
-                .decode("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8")));
-        
         ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", 60000);
+        ReflectionTestUtils.setField(tokenProvider, "jwtTokenBlacklist",
+            new JWTTokenBlacklist(mock(JWTTokenBlacklistRepository.class), new SimpleMeterRegistry()));
         jwtFilter = new JWTFilter(tokenProvider, cookieProvider);
         SecurityContextHolder.getContext().setAuthentication(null);
     }
@@ -71,10 +77,10 @@ public class JWTFilterTest {
             "test-password",
             Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
         );
-        String jwt = tokenProvider.createToken(authentication, false);
+        String jwt = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
-        Cookie cookie = new Cookie("Secure-Fgp", "33750D67711985F76E8E53D0F85BE4894E480BB60AA0EA828D7CF6B75E3524907E4B391511D027344713E9DE8FC90AAB8185");
+        Cookie cookie = new Cookie(CookieProvider.FINGERPRINT_COOKIE, USER_FINGERPRINT);
         cookie.setPath("/");
         cookie.setHttpOnly(true);
         cookie.setSecure(true);
@@ -83,15 +89,38 @@ public class JWTFilterTest {
         request.setRequestURI("/api/test");
         MockHttpServletResponse response = new MockHttpServletResponse();
         MockFilterChain filterChain = new MockFilterChain();
-        doReturn(true).when(tokenProvider).validateToken(anyString());
 
         jwtFilter.doFilter(request, response, filterChain);
 
+        verify(tokenProvider).authenticate(jwt);
+        verify(tokenProvider, never()).validateToken(anyString());
+        verify(tokenProvider, never()).getAuthentication(anyString());
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
         assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo("test-user");
         assertThat(SecurityContextHolder.getContext().getAuthentication().getCredentials().toString()).isEqualTo(jwt);
     }
 
+    @Test
+    public void testJWTFilterWrongFingerprint() throws Exception {
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+            "test-user",
+            "test-password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
+        );
+        String jwt = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
+        request.setCookies(new Cookie(CookieProvider.FINGERPRINT_COOKIE, cookieProvider.generateUserFingerprint()));
+        request.setRequestURI("/api/test");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        jwtFilter.doFilter(request, response, filterChain);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
     @Test
     public void testJWTFilterInvalidTokenAndWrongCookie() throws Exception {
         String jwt = "wrong_jwt";
@@ -100,7 +129,6 @@ public class JWTFilterTest {
         request.setRequestURI("/api/test");
         MockHttpServletResponse response = new MockHttpServletResponse();
         MockFilterChain filterChain = new MockFilterChain();
-        doReturn(true).when(tokenProvider).validateToken(anyString());
 
         jwtFilter.doFilter(request, response, filterChain);
 
@@ -115,10 +143,10 @@ public class JWTFilterTest {
             "test-password",
             Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
         );
-        String jwt = tokenProvider.createToken(authentication, false);
+        String jwt = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
-        Cookie cookie = new Cookie("Secure-Fgp", "33750D67711985F76E8E53D0F85BE4894E480BB60AA0EA828D7CF6B75E3524907E4B391511D027344713E9DE8FC90AAB8185");
+        Cookie cookie = new Cookie(CookieProvider.FINGERPRINT_COOKIE, USER_FINGERPRINT);
         cookie.setPath("/");
         cookie.setHttpOnly(true);
         cookie.setSecure(true);
@@ -127,7 +155,7 @@ public class JWTFilterTest {
         request.setRequestURI("/api/test");
         MockHttpServletResponse response = new MockHttpServletResponse();
         MockFilterChain filterChain = new MockFilterChain();
-        doReturn(false).when(tokenProvider).validateToken(anyString());
+        doReturn(null).when(tokenProvider).authenticate(anyString());
 
         jwtFilter.doFilter(request, response, filterChain);
 
@@ -165,7 +193,7 @@ public class JWTFilterTest {
             "test-password",
             Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))
         );
-        String jwt = tokenProvider.createToken(authentication, false);
+        String jwt = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.addHeader(JWTFilter.AUTHORIZATION_HEADER, "Basic " + jwt);
         request.setRequestURI("/api/test");
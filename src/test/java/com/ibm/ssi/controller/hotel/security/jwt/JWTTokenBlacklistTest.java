@@ -0,0 +1,144 @@
+package com.ibm.ssi.controller.hotel.security.jwt;
+
+import java.security.Key;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class JWTTokenBlacklistTest {
+
+    private static final long ONE_MINUTE = 60000;
+
+    @Mock
+    JWTTokenBlacklistRepository jwtTokenBlacklistRepository;
+
+    SimpleMeterRegistry meterRegistry;
+
+    JWTTokenBlacklist jwtTokenBlacklist;
+
+    Key key;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        key = Keys.hmacShaKeyFor(Decoders.BASE64
+            .decode("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8"));
+        when(jwtTokenBlacklistRepository.findByExpiresAtGreaterThanEqual(any())).thenReturn(Collections.emptyList());
+        when(jwtTokenBlacklistRepository.findByCreatedAtGreaterThanEqual(any())).thenReturn(Collections.emptyList());
+        jwtTokenBlacklist = new JWTTokenBlacklist(jwtTokenBlacklistRepository, meterRegistry);
+    }
+
+    @Test
+    void testInitLoadsTokensWhichDidNotExpire() {
+        String token = createToken(ONE_MINUTE);
+        when(jwtTokenBlacklistRepository.findByExpiresAtGreaterThanEqual(any()))
+            .thenReturn(List.of(jwtTokenBlacklist.createEntry(token)));
+
+        jwtTokenBlacklist.init();
+
+        assertThat(jwtTokenBlacklist.isBlacklisted(token)).isTrue();
+        assertThat(jwtTokenBlacklist.isBlacklisted(createToken(2 * ONE_MINUTE))).isFalse();
+        ArgumentCaptor<Date> expiresAfter = ArgumentCaptor.forClass(Date.class);
+        verify(jwtTokenBlacklistRepository).findByExpiresAtGreaterThanEqual(expiresAfter.capture());
+        assertThat(expiresAfter.getValue()).isCloseTo(new Date(), 5000);
+        assertThat(meterRegistry.get("hotel.controller.jwt.blacklist.size").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void testCreateEntryStoresDigestAndExpiration() {
+        Date expiration = new Date((System.currentTimeMillis() + ONE_MINUTE) / 1000 * 1000);
+        String token = Jwts.builder()
+            .setSubject("user")
+            .signWith(key, SignatureAlgorithm.HS512)
+            .setExpiration(expiration)
+            .compact();
+
+        BlacklistedJWTToken blacklistedToken = jwtTokenBlacklist.createEntry(token);
+
+        assertThat(blacklistedToken.getDigest()).isEqualTo(JWTTokenBlacklist.digest(token)).hasSize(44).doesNotContain(token);
+        assertThat(blacklistedToken.getExpiresAt()).isEqualTo(expiration);
+    }
+
+    @Test
+    void testRefreshLoadsTokensBlacklistedOnOtherNodes() {
+        jwtTokenBlacklist.init();
+        String token = createToken(ONE_MINUTE);
+        assertThat(jwtTokenBlacklist.isBlacklisted(token)).isFalse();
+        when(jwtTokenBlacklistRepository.findByCreatedAtGreaterThanEqual(any()))
+            .thenReturn(List.of(jwtTokenBlacklist.createEntry(token)));
+
+        jwtTokenBlacklist.refresh();
+
+        assertThat(jwtTokenBlacklist.isBlacklisted(token)).isTrue();
+        ArgumentCaptor<Date> createdAfter = ArgumentCaptor.forClass(Date.class);
+        verify(jwtTokenBlacklistRepository).findByCreatedAtGreaterThanEqual(createdAfter.capture());
+        assertThat(createdAfter.getValue()).isAfter(new Date(System.currentTimeMillis() - 2 * ONE_MINUTE));
+    }
+
+    @Test
+    void testAddBlacklistsTokenImmediately() {
+        String token = createToken(ONE_MINUTE);
+
+        jwtTokenBlacklist.add(jwtTokenBlacklist.createEntry(token));
+
+        assertThat(jwtTokenBlacklist.isBlacklisted(token)).isTrue();
+        verifyNoInteractions(jwtTokenBlacklistRepository);
+    }
+
+    @Test
+    void testExpiredTokensAreEvicted() {
+        String expired = createToken(-ONE_MINUTE);
+        String valid = createToken(ONE_MINUTE);
+        jwtTokenBlacklist.add(jwtTokenBlacklist.createEntry(expired));
+        jwtTokenBlacklist.add(jwtTokenBlacklist.createEntry(valid));
+
+        jwtTokenBlacklist.refresh();
+
+        assertThat(jwtTokenBlacklist.isBlacklisted(expired)).isFalse();
+        assertThat(jwtTokenBlacklist.isBlacklisted(valid)).isTrue();
+        assertThat(meterRegistry.get("hotel.controller.jwt.blacklist.size").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void testTokenWithoutExpirationIsRejected() {
+        assertThatThrownBy(() -> jwtTokenBlacklist.createEntry("not a jwt")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testFailedRefreshKeepsKnownTokens() {
+        String token = createToken(ONE_MINUTE);
+        jwtTokenBlacklist.add(jwtTokenBlacklist.createEntry(token));
+        when(jwtTokenBlacklistRepository.findByCreatedAtGreaterThanEqual(any())).thenThrow(new IllegalStateException("down"));
+
+        jwtTokenBlacklist.refresh();
+
+        assertThat(jwtTokenBlacklist.isBlacklisted(token)).isTrue();
+    }
+
+    private String createToken(long validity) {
+        return Jwts.builder()
+            .setSubject("user")
+            .signWith(key, SignatureAlgorithm.HS512)
+            .setExpiration(new Date(System.currentTimeMillis() + validity))
+            .compact();
+    }
+}
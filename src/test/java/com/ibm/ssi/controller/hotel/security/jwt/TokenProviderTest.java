@@ -19,11 +19,12 @@ package com.ibm.ssi.controller.hotel.security.jwt;
 import com.ibm.ssi.controller.hotel.security.AuthoritiesConstants;
 import com.ibm.ssi.controller.hotel.security.cookie.CookieProvider;
 import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
-import com.ibm.ssi.controller.hotel.service.dto.JWTTokenDTO;
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
 
 import java.io.UnsupportedEncodingException;
 import java.security.Key;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -40,9 +41,10 @@ import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 
 @SpringBootTest()
@@ -53,18 +55,23 @@ public class TokenProviderTest {
 
     private static final long ONE_MINUTE = 60000;
 
+    private static final String USER_FINGERPRINT = "fingerprint";
+
     private Key key;
+    private JHipsterProperties jHipsterProperties;
+    private SimpleMeterRegistry meterRegistry;
     private TokenProvider tokenProvider;
+    private JWTTokenBlacklist jwtTokenBlacklist;
 
     @BeforeEach
     public void setup() {
-        tokenProvider = new TokenProvider( new JHipsterProperties(), new CookieProvider());
-        key = Keys.hmacShaKeyFor(Decoders.BASE64
-            .decode("fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8"));
-
-        ReflectionTestUtils.setField(tokenProvider, "key", key);
-        ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", ONE_MINUTE);
-        ReflectionTestUtils.setField(tokenProvider, "jwtTokenBlacklistRepository", mockRepository);
+        String base64Secret = "fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8";
+        jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setBase64Secret(base64Secret);
+        key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret));
+        meterRegistry = new SimpleMeterRegistry();
+        jwtTokenBlacklist = new JWTTokenBlacklist(mockRepository, new SimpleMeterRegistry());
+        tokenProvider = createTokenProvider(10000, ONE_MINUTE);
     }
 
     @Test
@@ -89,7 +96,7 @@ public class TokenProviderTest {
     @Test
     public void testReturnFalseWhenJWTisMalformed() throws UnsupportedEncodingException {
         Authentication authentication = createAuthentication();
-        String token = tokenProvider.createToken(authentication, false);
+        String token = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
         String invalidToken = token.substring(1);
         mockEmptyBlacklistRepositoryCall();
 
@@ -103,7 +110,7 @@ public class TokenProviderTest {
         ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", -ONE_MINUTE);
 
         Authentication authentication = createAuthentication();
-        String token = tokenProvider.createToken(authentication, false);
+        String token = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
         mockEmptyBlacklistRepositoryCall();
 
         boolean isTokenValid = tokenProvider.validateToken(token);
@@ -130,6 +137,135 @@ public class TokenProviderTest {
         assertThat(isTokenValid).isEqualTo(false);
     }
 
+    @Test
+    public void testAuthenticateReturnsPrincipalOfValidJWT() throws UnsupportedEncodingException {
+        String token = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        String otherToken = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        mockEmptyBlacklistRepositoryCall();
+
+        Authentication authentication = tokenProvider.authenticate(token);
+        Authentication otherAuthentication = tokenProvider.authenticate(otherToken);
+
+        assertThat(authentication.isAuthenticated()).isTrue();
+        assertThat(authentication.getName()).isEqualTo("anonymous");
+        assertThat(authentication.getCredentials()).isEqualTo(token);
+        assertThat(authentication.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+            .containsExactly(AuthoritiesConstants.ANONYMOUS);
+        assertThat(otherAuthentication.getAuthorities()).isEqualTo(authentication.getAuthorities());
+    }
+
+    @Test
+    public void testAuthenticateReturnsNullWhenJwtIsBlacklisted() throws UnsupportedEncodingException {
+        String token = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        mockFilledBlacklistRepositoryCall(token);
+
+        assertThat(tokenProvider.authenticate(token)).isNull();
+    }
+
+    @Test
+    public void testAuthenticateCachesVerifiedJWT() throws UnsupportedEncodingException {
+        String token = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        mockEmptyBlacklistRepositoryCall();
+
+        Authentication authentication = tokenProvider.authenticate(token);
+
+        assertThat(tokenProvider.authenticate(token)).isSameAs(authentication);
+        assertThat(cacheRequests("hit")).isEqualTo(1);
+        assertThat(cacheRequests("miss")).isEqualTo(1);
+        assertThat(meterRegistry.get("hotel.controller.jwt.cache.size").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAuthenticateRejectsCachedJWTOnceBlacklisted() throws UnsupportedEncodingException {
+        String token = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        mockEmptyBlacklistRepositoryCall();
+        assertThat(tokenProvider.authenticate(token)).isNotNull();
+
+        jwtTokenBlacklist.add(jwtTokenBlacklist.createEntry(token));
+
+        assertThat(tokenProvider.authenticate(token)).isNull();
+        assertThat(meterRegistry.get("hotel.controller.jwt.cache.size").gauge().value()).isZero();
+    }
+
+    @Test
+    public void testAuthenticateVerifiesJWTAgainAfterCacheTtl() throws Exception {
+        tokenProvider = createTokenProvider(10000, 1);
+        String token = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        mockEmptyBlacklistRepositoryCall();
+
+        Authentication authentication = tokenProvider.authenticate(token);
+        Thread.sleep(10);
+
+        assertThat(tokenProvider.authenticate(token)).isNotSameAs(authentication);
+        assertThat(cacheRequests("miss")).isEqualTo(2);
+    }
+
+    @Test
+    public void testAuthenticateDoesNotCacheBeyondMaxSize() throws UnsupportedEncodingException {
+        tokenProvider = createTokenProvider(1, ONE_MINUTE);
+        String token = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        String otherToken = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        mockEmptyBlacklistRepositoryCall();
+
+        tokenProvider.authenticate(token);
+        tokenProvider.authenticate(otherToken);
+        tokenProvider.authenticate(otherToken);
+        tokenProvider.authenticate(token);
+
+        assertThat(cacheRequests("hit")).isEqualTo(1);
+        assertThat(cacheRequests("miss")).isEqualTo(3);
+    }
+
+    @Test
+    public void testAuthenticateSweepsFullCacheAtMostOncePerTtl() throws Exception {
+        tokenProvider = createTokenProvider(1, 200);
+        String token = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        String otherToken = tokenProvider.createToken(createAuthentication(), false, USER_FINGERPRINT);
+        mockEmptyBlacklistRepositoryCall();
+        AtomicLong lastEviction = (AtomicLong) ReflectionTestUtils.getField(tokenProvider, "lastEviction");
+
+        tokenProvider.authenticate(token);
+        Thread.sleep(250);
+
+        // the expired authentication is kept as the cache was swept recently
+        lastEviction.set(System.currentTimeMillis());
+        tokenProvider.authenticate(otherToken);
+        tokenProvider.authenticate(otherToken);
+        assertThat(cacheRequests("hit")).isZero();
+
+        lastEviction.set(0);
+        tokenProvider.authenticate(otherToken);
+        tokenProvider.authenticate(otherToken);
+        assertThat(cacheRequests("hit")).isEqualTo(1);
+        assertThat(cacheRequests("miss")).isEqualTo(4);
+    }
+
+    @Test
+    public void testCreatedTokensHaveDistinctIds() throws UnsupportedEncodingException {
+        Authentication authentication = createAuthentication();
+
+        String token = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
+        String otherToken = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
+
+        String id = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody().getId();
+        assertThat(id).isNotEmpty();
+        assertThat(otherToken).isNotEqualTo(token);
+    }
+
+    private TokenProvider createTokenProvider(int cacheMaxSize, long cacheTtl) {
+        meterRegistry = new SimpleMeterRegistry();
+        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties, new CookieProvider(), meterRegistry,
+            cacheMaxSize, cacheTtl);
+        tokenProvider.init();
+        ReflectionTestUtils.setField(tokenProvider, "tokenValidityInMilliseconds", ONE_MINUTE);
+        ReflectionTestUtils.setField(tokenProvider, "jwtTokenBlacklist", jwtTokenBlacklist);
+        return tokenProvider;
+    }
+
+    private double cacheRequests(String result) {
+        return meterRegistry.get("hotel.controller.jwt.cache.requests").tag("result", result).counter().count();
+    }
+
     private Authentication createAuthentication() {
         Collection<GrantedAuthority> authorities = new ArrayList<>();
         authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.ANONYMOUS));
@@ -155,14 +291,16 @@ public class TokenProviderTest {
     }
 
     private void mockEmptyBlacklistRepositoryCall() {
-        List<JWTTokenDTO> mockList = new ArrayList<JWTTokenDTO>();
-        doReturn(mockList).when(mockRepository).findByToken(anyString());
+        List<BlacklistedJWTToken> mockList = new ArrayList<BlacklistedJWTToken>();
+        doReturn(mockList).when(mockRepository).findByCreatedAtGreaterThanEqual(any());
+        jwtTokenBlacklist.refresh();
     }
 
     private void mockFilledBlacklistRepositoryCall(String token) {
-        List<JWTTokenDTO> mockList = new ArrayList<JWTTokenDTO>();
-        mockList.add(new JWTTokenDTO(token));
+        List<BlacklistedJWTToken> mockList = new ArrayList<BlacklistedJWTToken>();
+        mockList.add(jwtTokenBlacklist.createEntry(token));
 
-        doReturn(mockList).when(mockRepository).findByToken(anyString());
+        doReturn(mockList).when(mockRepository).findByCreatedAtGreaterThanEqual(any());
+        jwtTokenBlacklist.refresh();
     }
 }
@@ -0,0 +1,111 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.Date;
+
+import com.ibm.ssi.controller.hotel.HotelControllerApp;
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import com.ibm.ssi.controller.hotel.repository.CheckInCredentialRepository;
+import com.ibm.ssi.controller.hotel.service.NotificationService;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialChangeDTO;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Integration tests for {@link CheckInCredentialChangeStreamListener} on an embedded single node replica set.
+ */
+@SpringBootTest(
+    classes = {HotelControllerApp.class, CheckInCredentialChangeStreamListenerIT.ReplicaSetConfiguration.class},
+    properties = {
+        "spring.mongodb.embedded.version=4.0.2",
+        "spring.mongodb.embedded.storage.repl-set-name=rs0",
+        "ssibk.hotel.controller.events.fan-out=CHANGE_STREAM"
+    })
+public class CheckInCredentialChangeStreamListenerIT {
+
+    @Autowired
+    private CheckInCredentialRepository checkInCredentialRepository;
+
+    @Autowired
+    private CheckInCredentialChangeStreamListener listener;
+
+    @MockBean
+    private NotificationService notificationService;
+
+    @Test
+    public void testChangesAreSentToLocalEmitters() throws InterruptedException {
+        for (int i = 0; i < 100 && !listener.isActive(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(listener.isActive()).isTrue();
+
+        CheckInCredential checkInCredential = checkInCredentialRepository.save(
+            new CheckInCredential("hotelId", "deskId", "presentationExchangeId"));
+        String id = checkInCredential.getId();
+        verify(notificationService, timeout(5000)).notifyLocalEmitters(eq("hotelId"), eq("deskId"),
+            argThat(change -> id.equals(change.getId()) && change.getState() == CheckInCredentialChangeDTO.State.SCANNED));
+
+        checkInCredential.setSendDate(new Date());
+        checkInCredentialRepository.save(checkInCredential);
+        verify(notificationService, timeout(5000)).notifyLocalEmitters(eq("hotelId"), eq("deskId"),
+            argThat(change -> id.equals(change.getId()) && change.getState() == CheckInCredentialChangeDTO.State.RECEIVED));
+
+        checkInCredentialRepository.deleteById(id);
+        verify(notificationService, timeout(5000)).notifyLocalEmitters(eq("hotelId"), eq("deskId"),
+            argThat(change -> id.equals(change.getId()) && change.getState() == CheckInCredentialChangeDTO.State.REMOVED));
+    }
+
+    /**
+     * The embedded Mongo is started with a replica set name but the replica set still has to be initiated before
+     * change streams can be opened.
+     */
+    @TestConfiguration
+    static class ReplicaSetConfiguration {
+
+        private static final int ALREADY_INITIALIZED = 23;
+
+        @Bean
+        static BeanPostProcessor replicaSetInitializer() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof MongoClient) {
+                        initiate(((MongoClient) bean).getDatabase("admin"));
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static void initiate(MongoDatabase admin) {
+            try {
+                admin.runCommand(new Document("replSetInitiate", new Document()));
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() != ALREADY_INITIALIZED) {
+                    throw e;
+                }
+            }
+            try {
+                for (int i = 0; i < 100 && !admin.runCommand(new Document("isMaster", 1)).getBoolean("ismaster", false); i++) {
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
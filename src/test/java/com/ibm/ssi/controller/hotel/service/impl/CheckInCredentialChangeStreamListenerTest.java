@@ -0,0 +1,141 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import com.ibm.ssi.controller.hotel.service.NotificationService;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialChangeDTO;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.TaskScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CheckInCredentialChangeStreamListenerTest {
+
+    private static final String ID = new ObjectId().toHexString();
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @Mock
+    NotificationService notificationService;
+
+    @Mock
+    TaskScheduler taskScheduler;
+
+    CheckInCredentialChangeStreamListener listener;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        listener = new CheckInCredentialChangeStreamListener(mongoTemplate, notificationService, taskScheduler, 5000);
+    }
+
+    @Test
+    void testInsertNotifiesDesk() {
+        listener.onMessage(createMessage(OperationType.INSERT, createCheckInCredential()));
+
+        ArgumentCaptor<CheckInCredentialChangeDTO> change = ArgumentCaptor.forClass(CheckInCredentialChangeDTO.class);
+        verify(notificationService).notifyLocalEmitters(eq("hotelId"), eq("deskId"), change.capture());
+        assertThat(change.getValue().getId()).isEqualTo(ID);
+        assertThat(change.getValue().getState()).isEqualTo(CheckInCredentialChangeDTO.State.SCANNED);
+    }
+
+    @Test
+    void testDeleteIsRoutedToDeskOfCredential() {
+        listener.onMessage(createMessage(OperationType.INSERT, createCheckInCredential()));
+
+        listener.onMessage(createMessage(OperationType.DELETE, null));
+
+        ArgumentCaptor<CheckInCredentialChangeDTO> change = ArgumentCaptor.forClass(CheckInCredentialChangeDTO.class);
+        verify(notificationService, times(2)).notifyLocalEmitters(eq("hotelId"), eq("deskId"), change.capture());
+        assertThat(change.getValue().getId()).isEqualTo(ID);
+        assertThat(change.getValue().getState()).isEqualTo(CheckInCredentialChangeDTO.State.REMOVED);
+    }
+
+    @Test
+    void testDeleteOfUnknownCredentialIsIgnored() {
+        listener.onMessage(createMessage(OperationType.DELETE, null));
+
+        verify(notificationService, never()).notifyLocalEmitters(any(), any(), any());
+    }
+
+    @Test
+    void testDeleteOfLoadedCredentialIsRoutedToDesk() {
+        mockCollection(createCheckInCredential());
+        listener.loadDesks();
+
+        listener.onMessage(createMessage(OperationType.DELETE, null));
+
+        ArgumentCaptor<CheckInCredentialChangeDTO> change = ArgumentCaptor.forClass(CheckInCredentialChangeDTO.class);
+        verify(notificationService).notifyLocalEmitters(eq("hotelId"), eq("deskId"), change.capture());
+        assertThat(change.getValue().getState()).isEqualTo(CheckInCredentialChangeDTO.State.REMOVED);
+    }
+
+    @Test
+    void testCredentialDeletedWhileNotWatchedIsForgotten() {
+        listener.onMessage(createMessage(OperationType.INSERT, createCheckInCredential()));
+        mockCollection();
+
+        listener.loadDesks();
+        listener.onMessage(createMessage(OperationType.DELETE, null));
+
+        verify(notificationService, times(1)).notifyLocalEmitters(any(), any(), any());
+    }
+
+    private void mockCollection(CheckInCredential... checkInCredentials) {
+        Iterator<CheckInCredential> iterator = Arrays.asList(checkInCredentials).iterator();
+        when(mongoTemplate.stream(any(Query.class), eq(CheckInCredential.class))).thenReturn(new CloseableIterator<CheckInCredential>() {
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public CheckInCredential next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    private static CheckInCredential createCheckInCredential() {
+        CheckInCredential checkInCredential = new CheckInCredential("hotelId", "deskId", "presentationExchangeId");
+        checkInCredential.setId(ID);
+        return checkInCredential;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Message<ChangeStreamDocument<Document>, CheckInCredential> createMessage(OperationType operationType,
+            CheckInCredential body) {
+        BsonDocument documentKey = new BsonDocument("_id", new BsonObjectId(new ObjectId(ID)));
+        ChangeStreamDocument<Document> raw = new ChangeStreamDocument<>(operationType,
+            new BsonDocument("_data", new BsonString("token")), null, null, null, documentKey, null, null, null, null);
+        Message<ChangeStreamDocument<Document>, CheckInCredential> message = mock(Message.class);
+        when(message.getRaw()).thenReturn(raw);
+        when(message.getBody()).thenReturn(body);
+        return message;
+    }
+}
@@ -0,0 +1,109 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.Collections;
+import java.util.Date;
+
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import com.ibm.ssi.controller.hotel.service.NotificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CheckInCredentialExpiryTest {
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @Mock
+    NotificationService notificationService;
+
+    @Mock
+    ProofRecordCleaner proofRecordCleaner;
+
+    SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testExpireUnsentCheckinCredential() {
+        CheckInCredential checkInCredential = createCheckInCredential();
+        when(mongoTemplate.find(any(Query.class), eq(CheckInCredential.class)))
+            .thenReturn(Collections.singletonList(checkInCredential));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(CheckInCredential.class))).thenReturn(checkInCredential);
+
+        createExpiry(900000, 0).expire();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(CheckInCredential.class));
+        Document criteria = query.getValue().getQueryObject();
+        assertThat(criteria.get("sendDate", Document.class)).containsEntry("$exists", false);
+        assertThat(criteria.get("scanDate", Document.class).get("$lt", Date.class))
+            .isBefore(new Date(System.currentTimeMillis() - 899000));
+        verify(notificationService).sendNotificationAboutExpiredCheckinCredential("hotelId", "deskId", "id");
+        verify(proofRecordCleaner).scheduleDeletion("presentationExchangeId");
+        assertThat(meterRegistry.get("hotel.controller.checkin.credential.expired").tag("state", "unsent").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void testExpireSentCheckinCredential() {
+        CheckInCredential checkInCredential = createCheckInCredential();
+        checkInCredential.setSendDate(new Date(0));
+        when(mongoTemplate.find(any(Query.class), eq(CheckInCredential.class)))
+            .thenReturn(Collections.singletonList(checkInCredential));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(CheckInCredential.class))).thenReturn(checkInCredential);
+
+        createExpiry(0, 86400000).expire();
+
+        verify(notificationService).sendNotificationAboutExpiredCheckinCredential("hotelId", "deskId", "id");
+        verifyNoInteractions(proofRecordCleaner);
+        assertThat(meterRegistry.get("hotel.controller.checkin.credential.expired").tag("state", "sent").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void testCheckinCredentialCompletedInTheMeantimeIsKept() {
+        when(mongoTemplate.find(any(Query.class), eq(CheckInCredential.class)))
+            .thenReturn(Collections.singletonList(createCheckInCredential()));
+
+        createExpiry(900000, 0).expire();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndRemove(query.capture(), eq(CheckInCredential.class));
+        assertThat(query.getValue().getQueryObject().toJson()).contains("\"id\": \"id\"").contains("\"$exists\": false");
+        verifyNoInteractions(notificationService, proofRecordCleaner);
+    }
+
+    @Test
+    void testExpiryIsDisabled() {
+        createExpiry(0, 0).expire();
+
+        verifyNoInteractions(mongoTemplate, notificationService);
+    }
+
+    private CheckInCredentialExpiry createExpiry(long unsentTtl, long retention) {
+        return new CheckInCredentialExpiry(mongoTemplate, notificationService, proofRecordCleaner, meterRegistry,
+            unsentTtl, retention, 100);
+    }
+
+    private CheckInCredential createCheckInCredential() {
+        CheckInCredential checkInCredential = new CheckInCredential("hotelId", "deskId", "presentationExchangeId");
+        checkInCredential.setId("id");
+        return checkInCredential;
+    }
+}
@@ -1,5 +1,6 @@
 package com.ibm.ssi.controller.hotel.service.impl;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,6 +13,7 @@ import com.ibm.ssi.controller.hotel.service.NotificationService;
 import com.ibm.ssi.controller.hotel.service.dto.*;
 import com.ibm.ssi.controller.hotel.service.exceptions.CannotFindMyHotelException;
 import com.ibm.ssi.controller.hotel.service.exceptions.CheckinCredentialNotFoundException;
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidCursorException;
 import com.ibm.ssi.controller.hotel.service.mapper.CheckInCredentialMapper;
 import com.ibm.ssi.controller.hotel.service.mapper.CorporateIdMapper;
 import com.ibm.ssi.controller.hotel.service.mapper.MasterIdMapper;
@@ -22,9 +24,16 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.bson.Document;
 import org.slf4j.Logger;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Mockito.*;
 
 class CheckInCredentialServiceImplTest {
@@ -49,6 +58,9 @@ class CheckInCredentialServiceImplTest {
     @Mock
     NotificationService notificationService;
 
+    @Mock
+    MongoTemplate mongoTemplate;
+
     @InjectMocks
     CheckInCredentialServiceImpl checkInCredentialServiceImpl;
 
@@ -58,21 +70,78 @@ class CheckInCredentialServiceImplTest {
     }
 
     @Test
-    void testGetDeskCredentials() throws CannotFindMyHotelException {
+    void testGetDeskCredentials() throws Exception {
+        mockMyHotel();
+        CheckInCredential checkInCredential = createSentCheckInCredential("id1", 1000);
+        MasterId masterId = new MasterId();
+        masterId.setFirstName("firstName");
+        masterId.setFamilyName("familyName");
+        checkInCredential.setMasterId(masterId);
+        when(mongoTemplate.find(any(Query.class), eq(CheckInCredential.class))).thenReturn(List.of(checkInCredential));
+
+        CheckInCredentialSummaryPageDTO result = checkInCredentialServiceImpl.getDeskCredentials("deskId", null, 2);
+
+        assertThat(result.getNextCursor()).isNull();
+        assertThat(result.getContent())
+            .extracting(CheckInCredentialSummaryDTO::getId, CheckInCredentialSummaryDTO::getFirstName,
+                CheckInCredentialSummaryDTO::getFamilyName, CheckInCredentialSummaryDTO::getScanDate)
+            .containsExactly(tuple("id1", "firstName", "familyName", new Date(1000)));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(CheckInCredential.class));
+        assertThat(query.getValue().getLimit()).isEqualTo(3);
+        assertThat(query.getValue().getFieldsObject()).doesNotContainKeys("masterId", "corporateId")
+            .containsKeys("masterId.firstName", "masterId.familyName", "scanDate", "valid");
+        assertThat(query.getValue().getQueryObject())
+            .containsEntry("hotelId", "hotelId")
+            .containsEntry("deskId", "deskId");
+    }
+
+    @Test
+    void testGetDeskCredentialsReturnsCursorOfNextPage() throws Exception {
+        mockMyHotel();
+        when(mongoTemplate.find(any(Query.class), eq(CheckInCredential.class))).thenReturn(List.of(
+            createSentCheckInCredential("id1", 1000), createSentCheckInCredential("id2", 2000),
+            createSentCheckInCredential("id3", 2000)));
+
+        CheckInCredentialSummaryPageDTO firstPage = checkInCredentialServiceImpl.getDeskCredentials("deskId", null, 2);
+
+        assertThat(firstPage.getContent()).extracting(CheckInCredentialSummaryDTO::getId).containsExactly("id1", "id2");
+        assertThat(firstPage.getNextCursor()).isNotNull();
+
+        checkInCredentialServiceImpl.getDeskCredentials("deskId", firstPage.getNextCursor(), 2);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(query.capture(), eq(CheckInCredential.class));
+        // the next page starts after the last check-in credential, ties of the scan date are broken by the id
+        assertThat(query.getAllValues().get(1).getQueryObject().toJson())
+            .contains("{\"scanDate\": {\"$gt\": {\"$date\": 2000}}}")
+            .contains("{\"scanDate\": {\"$date\": 2000}, \"id\": {\"$gt\": \"id2\"}}");
+    }
+
+    @Test
+    void testGetDeskCredentialsWithInvalidCursor() {
+        mockMyHotel();
+
+        Assertions.assertThrows(InvalidCursorException.class,
+            () -> checkInCredentialServiceImpl.getDeskCredentials("deskId", "not a cursor", 2));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    private void mockMyHotel() {
         DeskDTO deskDTO = new DeskDTO();
         deskDTO.setId("deskId");
         HotelDTO hotelDTO = new HotelDTO();
         hotelDTO.setId("hotelId");
         hotelDTO.setDesks(List.of(deskDTO));
         when(hotelService.getMyHotel()).thenReturn(Optional.of(hotelDTO));
-        CheckInCredential checkInCredential = new CheckInCredential("hotelId", "deskId", "presentationExchangeId");
-        when(checkInCredentialRepository.findByHotelIdAndDeskIdAndSendDateIsNotNullOrderByScanDateAsc(anyString(), anyString())).thenReturn(List.of(checkInCredential));
-        CheckInCredentialDTO checkInCredentialDTO = new CheckInCredentialDTO("id", "hotelId", "deskId");
-        when(checkInCredentialMapper.checkInCredentialToCheckInCredentialDTO(checkInCredential)).thenReturn(checkInCredentialDTO);
-
-        List<CheckInCredentialDTO> result = checkInCredentialServiceImpl.getDeskCredentials("deskId");
+    }
 
-        Assertions.assertEquals(List.of(checkInCredentialDTO), result);
+    private CheckInCredential createSentCheckInCredential(String id, long scanDate) {
+        CheckInCredential checkInCredential = new CheckInCredential("hotelId", "deskId", "presentationExchangeId");
+        checkInCredential.setId(id);
+        checkInCredential.setScanDate(new Date(scanDate));
+        checkInCredential.setSendDate(new Date(scanDate));
+        return checkInCredential;
     }
 
     @Test
@@ -84,33 +153,48 @@ class CheckInCredentialServiceImplTest {
         assertThat(captor.getValue())
             .hasFieldOrPropertyWithValue("hotelId", "hotelId")
             .hasFieldOrPropertyWithValue("deskId", "deskId");
-        verify(this.notificationService).sendNotificationAboutNewCheckinCredentials("hotelId", "deskId");
+        verify(this.notificationService).sendNotificationAboutCheckinCredential(captor.getValue());
     }
 
     @Test
     void testUpdateCheckinCredential() throws CheckinCredentialNotFoundException {
-        when(masterIdMapper.masterIdDTOToMasterId(any())).thenReturn(new MasterId());
-        when(corporateIdMapper.corporateIdDTOToCorporateId(any())).thenReturn(new CorporateId());
+        MasterId masterId = new MasterId();
+        CorporateId corporateId = new CorporateId();
+        when(masterIdMapper.masterIdDTOToMasterId(any())).thenReturn(masterId);
+        when(corporateIdMapper.corporateIdDTOToCorporateId(any())).thenReturn(corporateId);
         CheckInCredential checkInCredential = new CheckInCredential("hotelId", "deskId", "presentationExchangeId");
-        when(checkInCredentialRepository.findOneByPresentationExchangeId("presentationExchangeId")).thenReturn(Optional.of(checkInCredential));
-        when(checkInCredentialRepository.save(checkInCredential)).thenReturn(checkInCredential);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(CheckInCredential.class)))
+            .thenReturn(checkInCredential);
 
         CheckInCredential result = checkInCredentialServiceImpl.updateCheckinCredential("presentationExchangeId", new MasterIdDTO(), new CorporateIdDTO());
 
         Assertions.assertEquals(checkInCredential, result);
-        verify(this.notificationService).sendNotificationAboutNewCheckinCredentials("hotelId", "deskId");
+        Document set = captureUpdate().getUpdateObject().get("$set", Document.class);
+        assertThat(set).containsOnlyKeys("masterId", "corporateId", "sendDate");
+        assertThat(set.get("masterId")).isSameAs(masterId);
+        verify(this.checkInCredentialRepository, never()).save(any());
+        verify(this.notificationService).sendNotificationAboutCheckinCredential(checkInCredential);
     }
 
     @Test
     void testUpdateValidity() throws CheckinCredentialNotFoundException {
         CheckInCredential checkInCredential = new CheckInCredential("hotelId", "deskId", "presentationExchangeId");
-        when(checkInCredentialRepository.findOneByPresentationExchangeId(anyString())).thenReturn(Optional.of(checkInCredential));
-        when(checkInCredentialRepository.save(checkInCredential)).thenReturn(checkInCredential);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(CheckInCredential.class)))
+            .thenReturn(checkInCredential);
 
         CheckInCredential result = checkInCredentialServiceImpl.updateValidity("presentationExchangeId", true);
 
         Assertions.assertEquals(checkInCredential, result);
-        verify(this.notificationService).sendNotificationAboutNewCheckinCredentials("hotelId", "deskId");
+        assertThat(captureUpdate().getUpdateObject().get("$set", Document.class)).containsExactly(entry("valid", true));
+        verify(this.notificationService).sendNotificationAboutCheckinCredential(checkInCredential);
+    }
+
+    @Test
+    void testUpdateValidityOfUnknownCheckinCredential() {
+        Assertions.assertThrows(CheckinCredentialNotFoundException.class,
+            () -> checkInCredentialServiceImpl.updateValidity("presentationExchangeId", true));
+
+        verify(this.notificationService, never()).sendNotificationAboutCheckinCredential(any());
     }
 
     @Test
@@ -119,4 +203,14 @@ class CheckInCredentialServiceImplTest {
 
         Assertions.assertEquals(Optional.empty(), result);
     }
+
+    private Update captureUpdate() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(), eq(CheckInCredential.class));
+        assertThat(query.getValue().getQueryObject()).containsExactly(entry("presentationExchangeId", "presentationExchangeId"));
+        assertThat(options.getValue().isReturnNew()).isTrue();
+        return update.getValue();
+    }
 }
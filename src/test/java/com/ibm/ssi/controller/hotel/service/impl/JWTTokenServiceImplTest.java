@@ -0,0 +1,84 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.Date;
+
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
+import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
+import com.ibm.ssi.controller.hotel.security.jwt.JWTTokenBlacklist;
+import com.ibm.ssi.controller.hotel.security.jwt.TokenProvider;
+import com.ibm.ssi.controller.hotel.service.dto.JWTTokenDTO;
+import com.ibm.ssi.controller.hotel.service.exceptions.InvalidJWTTokenException;
+import com.ibm.ssi.controller.hotel.service.exceptions.JWTTokenAlreadyBlacklisted;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class JWTTokenServiceImplTest {
+
+    @Mock
+    JWTTokenBlacklistRepository jwtTokenBlacklistRepository;
+
+    @Mock
+    JWTTokenBlacklist jwtTokenBlacklist;
+
+    @Mock
+    TokenProvider tokenProvider;
+
+    @InjectMocks
+    JWTTokenServiceImpl jwtTokenService;
+
+    BlacklistedJWTToken blacklistedToken;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        blacklistedToken = new BlacklistedJWTToken("digest", new Date());
+        when(jwtTokenBlacklist.createEntry("jwtToken")).thenReturn(blacklistedToken);
+        when(tokenProvider.validateToken("jwtToken")).thenReturn(true);
+    }
+
+    @Test
+    void testAddToBlacklist() throws Exception {
+        JWTTokenDTO result = jwtTokenService.addToBlacklist(new JWTTokenDTO("jwtToken"));
+
+        assertThat(result.getToken()).isEqualTo("jwtToken");
+        assertThat(result.getCreatedAt()).isEqualTo(blacklistedToken.getCreatedAt());
+        verify(jwtTokenBlacklistRepository).insert(blacklistedToken);
+        verify(jwtTokenBlacklist).add(blacklistedToken);
+    }
+
+    @Test
+    void testAddToBlacklistTwice() {
+        when(jwtTokenBlacklistRepository.insert(blacklistedToken)).thenThrow(new DuplicateKeyException("digest"));
+
+        Assertions.assertThrows(JWTTokenAlreadyBlacklisted.class,
+            () -> jwtTokenService.addToBlacklist(new JWTTokenDTO("jwtToken")));
+        verify(jwtTokenBlacklist, never()).add(any());
+    }
+
+    @Test
+    void testAddToBlacklistRejectsTokenBlacklistedBefore() {
+        when(jwtTokenBlacklist.isBlacklisted("jwtToken")).thenReturn(true);
+
+        Assertions.assertThrows(JWTTokenAlreadyBlacklisted.class,
+            () -> jwtTokenService.addToBlacklist(new JWTTokenDTO("jwtToken")));
+        verifyNoInteractions(jwtTokenBlacklistRepository);
+    }
+
+    @Test
+    void testAddToBlacklistRejectsInvalidToken() {
+        when(tokenProvider.validateToken("jwtToken")).thenReturn(false);
+
+        Assertions.assertThrows(InvalidJWTTokenException.class,
+            () -> jwtTokenService.addToBlacklist(new JWTTokenDTO("jwtToken")));
+        verifyNoInteractions(jwtTokenBlacklistRepository);
+        verify(jwtTokenBlacklist, never()).add(any());
+    }
+}
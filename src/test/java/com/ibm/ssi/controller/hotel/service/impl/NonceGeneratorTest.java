@@ -0,0 +1,66 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class NonceGeneratorTest {
+
+    @Test
+    void testNoncesAreUnique() {
+        NonceGenerator nonceGenerator = new NonceGenerator(Runnable::run, 0);
+
+        Set<String> nonces = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            nonces.add(nonceGenerator.nextNonce());
+        }
+
+        assertThat(nonces).hasSize(1000);
+        assertThat(nonces).allSatisfy(nonce -> assertThat(new BigInteger(nonce).bitLength()).isLessThanOrEqualTo(NonceGenerator.NONCE_BITS));
+    }
+
+    @Test
+    void testPoolIsFilledAtStartup() {
+        NonceGenerator nonceGenerator = new NonceGenerator(Runnable::run, 8);
+
+        nonceGenerator.init();
+
+        assertThat(nonceGenerator.getPoolSize()).isEqualTo(8);
+    }
+
+    @Test
+    void testPoolIsRefilledWhenRunningLow() {
+        Executor executor = mock(Executor.class);
+        NonceGenerator nonceGenerator = new NonceGenerator(executor, 8);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        nonceGenerator.init();
+
+        for (int i = 0; i < 3; i++) {
+            nonceGenerator.nextNonce();
+        }
+        verify(executor, times(1)).execute(any(Runnable.class));
+
+        nonceGenerator.nextNonce();
+        verify(executor, times(2)).execute(any(Runnable.class));
+        assertThat(nonceGenerator.getPoolSize()).isEqualTo(8);
+    }
+
+    @Test
+    void testEmptyPoolFallsBackToDrbg() {
+        Executor executor = mock(Executor.class);
+        NonceGenerator nonceGenerator = new NonceGenerator(executor, 8);
+
+        assertThat(nonceGenerator.nextNonce()).isNotEmpty();
+        verify(executor).execute(any(Runnable.class));
+    }
+}
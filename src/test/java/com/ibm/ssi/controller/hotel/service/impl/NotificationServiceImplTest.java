@@ -0,0 +1,280 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
+import com.ibm.ssi.controller.hotel.repository.EmitterRepository;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialChangeDTO;
+import com.ibm.ssi.controller.hotel.service.dto.CheckInCredentialEventDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class NotificationServiceImplTest {
+
+    @Mock
+    EmitterRepository emitterRepository;
+
+    @Mock
+    SseEventDispatcher dispatcher;
+
+    @Mock
+    TaskScheduler taskScheduler;
+
+    @InjectMocks
+    NotificationServiceImpl notificationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 100L);
+        ReflectionTestUtils.setField(notificationService, "replaySize", 2);
+        ReflectionTestUtils.setField(notificationService, "replayMaxAge", 300000L);
+        when(emitterRepository.findByHotelIdAndDeskId("hotelId", "deskId")).thenReturn(Map.of("uuid", new SseEmitter()));
+    }
+
+    @Test
+    void testNotificationsWithinWindowAreCoalesced() {
+        CheckInCredential first = createCheckInCredential("id1", "deskId");
+        CheckInCredential second = createCheckInCredential("id2", "deskId");
+        notificationService.sendNotificationAboutCheckinCredential(first);
+        notificationService.sendNotificationAboutCheckinCredential(second);
+        first.setSendDate(new Date());
+        notificationService.sendNotificationAboutCheckinCredential(first);
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler, times(1)).schedule(flush.capture(), any(Instant.class));
+        verifyNoInteractions(dispatcher);
+
+        flush.getValue().run();
+
+        CheckInCredentialEventDTO payload = captureDispatchedPayload();
+        assertThat(payload.getVersion()).isEqualTo(1);
+        assertThat(payload.getChanges())
+            .extracting(CheckInCredentialChangeDTO::getId, CheckInCredentialChangeDTO::getState)
+            .containsExactly(
+                tuple("id2", CheckInCredentialChangeDTO.State.SCANNED),
+                tuple("id1", CheckInCredentialChangeDTO.State.RECEIVED));
+    }
+
+    @Test
+    void testVersionIncreasesPerDesk() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        notificationService.sendNotificationAboutRemovedCheckinCredential("hotelId", "deskId", "id1");
+
+        ArgumentCaptor<SseEmitter.SseEventBuilder> events = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(dispatcher, times(2)).dispatch(eq("uuid"), events.capture());
+        CheckInCredentialEventDTO removal = extractPayload(events.getAllValues().get(1));
+        assertThat(removal.getVersion()).isEqualTo(2);
+        assertThat(removal.getChanges()).extracting(CheckInCredentialChangeDTO::getState)
+            .containsExactly(CheckInCredentialChangeDTO.State.REMOVED);
+    }
+
+    @Test
+    void testExpiredCheckinCredential() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+
+        notificationService.sendNotificationAboutExpiredCheckinCredential("hotelId", "deskId", "id1");
+
+        assertThat(captureDispatchedPayload().getChanges())
+            .extracting(CheckInCredentialChangeDTO::getId, CheckInCredentialChangeDTO::getState)
+            .containsExactly(tuple("id1", CheckInCredentialChangeDTO.State.EXPIRED));
+    }
+
+    @Test
+    void testNotificationsForDifferentDesksAreNotCoalesced() {
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id2", "otherDeskId"));
+
+        verify(taskScheduler, times(2)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void testNotificationAfterFlushStartsNewWindow() {
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(flush.capture(), any(Instant.class));
+        flush.getValue().run();
+
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+
+        verify(taskScheduler, times(2)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void testCoalescingDisabled() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+
+        verifyNoInteractions(taskScheduler);
+        verify(dispatcher, times(2)).dispatch(anyString(), any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void testReconnectReplaysMissedEvents() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id2", "deskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id3", "deskId"));
+        SseEmitter emitter = new SseEmitter();
+
+        notificationService.subscribe("uuid2", "hotelId", "deskId", emitter, eventId(2));
+
+        verify(dispatcher).register("uuid2", "hotelId", "deskId", emitter);
+        ArgumentCaptor<SseEmitter.SseEventBuilder> event = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(dispatcher, times(1)).dispatch(eq("uuid2"), event.capture());
+        CheckInCredentialEventDTO payload = extractPayload(event.getValue());
+        assertThat(payload.getVersion()).isEqualTo(3);
+        assertThat(payload.getChanges()).extracting(CheckInCredentialChangeDTO::getId).containsExactly("id3");
+    }
+
+    @Test
+    void testReconnectWithEvictedEventsRequestsResync() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id2", "deskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id3", "deskId"));
+
+        // only the events 2 and 3 are kept, event 1 is missing for the client
+        notificationService.subscribe("uuid2", "hotelId", "deskId", new SseEmitter(), eventId(0));
+
+        ArgumentCaptor<SseEmitter.SseEventBuilder> event = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(dispatcher, times(1)).dispatch(eq("uuid2"), event.capture());
+        assertThat(extractText(event.getValue())).contains("event:" + NotificationServiceImpl.RESYNC);
+        CheckInCredentialEventDTO payload = extractPayload(event.getValue());
+        assertThat(payload.getVersion()).isEqualTo(3);
+        assertThat(payload.getChanges()).isEmpty();
+    }
+
+    @Test
+    void testReconnectWithUnknownEventIdRequestsResync() {
+        notificationService.subscribe("uuid2", "hotelId", "deskId", new SseEmitter(), eventId(42));
+
+        ArgumentCaptor<SseEmitter.SseEventBuilder> event = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(dispatcher, times(1)).dispatch(eq("uuid2"), event.capture());
+        assertThat(extractText(event.getValue())).contains("event:" + NotificationServiceImpl.RESYNC);
+    }
+
+    @Test
+    void testReconnectWithEventIdOfOtherNodeRequestsResync() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+
+        notificationService.subscribe("uuid2", "hotelId", "deskId", new SseEmitter(), "other-node:1");
+
+        ArgumentCaptor<SseEmitter.SseEventBuilder> event = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(dispatcher, times(1)).dispatch(eq("uuid2"), event.capture());
+        assertThat(extractText(event.getValue())).contains("event:" + NotificationServiceImpl.RESYNC);
+    }
+
+    @Test
+    void testChangeStreamFanOutOnlyNotifiesThroughListener() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+        ReflectionTestUtils.setField(notificationService, "fanOut", NotificationServiceImpl.FanOut.CHANGE_STREAM);
+
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        notificationService.sendNotificationAboutRemovedCheckinCredential("hotelId", "deskId", "id1");
+        verifyNoInteractions(dispatcher);
+
+        notificationService.notifyLocalEmitters("hotelId", "deskId",
+            new CheckInCredentialChangeDTO("id1", CheckInCredentialChangeDTO.State.REMOVED));
+        assertThat(captureDispatchedPayload().getChanges())
+            .extracting(CheckInCredentialChangeDTO::getState)
+            .containsExactly(CheckInCredentialChangeDTO.State.REMOVED);
+    }
+
+    @Test
+    void testSubscribeWithoutEventIdDoesNotReplay() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+
+        notificationService.subscribe("uuid2", "hotelId", "deskId", new SseEmitter(), null);
+
+        verify(dispatcher, never()).dispatch(eq("uuid2"), any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void testOldEventsAndIdleHistoriesAreEvicted() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "deskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id2", "otherDeskId"));
+        Map<?, ?> histories = (Map<?, ?>) ReflectionTestUtils.getField(notificationService, "histories");
+        assertThat(histories).hasSize(2);
+
+        // every event is older than the max age
+        ReflectionTestUtils.setField(notificationService, "replayMaxAge", -1000L);
+        notificationService.evictHistories();
+
+        // the history of the desk with an emitter keeps its version
+        assertThat(histories).hasSize(1);
+        notificationService.subscribe("uuid2", "hotelId", "deskId", new SseEmitter(), eventId(1));
+        verify(dispatcher, never()).dispatch(eq("uuid2"), any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void testEventsOlderThanMaxAgeAreEvictedWhenSending() {
+        ReflectionTestUtils.setField(notificationService, "coalescingWindow", 0L);
+        ReflectionTestUtils.setField(notificationService, "replayMaxAge", -1000L);
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id1", "otherDeskId"));
+        notificationService.sendNotificationAboutCheckinCredential(createCheckInCredential("id2", "otherDeskId"));
+
+        Map<?, ?> histories = (Map<?, ?>) ReflectionTestUtils.getField(notificationService, "histories");
+        Object history = histories.values().iterator().next();
+        assertThat((Collection<?>) ReflectionTestUtils.getField(history, "entries")).hasSize(1);
+    }
+
+    private CheckInCredentialEventDTO captureDispatchedPayload() {
+        ArgumentCaptor<SseEmitter.SseEventBuilder> event = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(dispatcher, times(1)).dispatch(eq("uuid"), event.capture());
+        return extractPayload(event.getValue());
+    }
+
+    private static CheckInCredentialEventDTO extractPayload(SseEmitter.SseEventBuilder event) {
+        return event.build().stream()
+            .map(ResponseBodyEmitter.DataWithMediaType::getData)
+            .filter(CheckInCredentialEventDTO.class::isInstance)
+            .map(CheckInCredentialEventDTO.class::cast)
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private String eventId(long version) {
+        return ReflectionTestUtils.getField(notificationService, "instanceId") + ":" + version;
+    }
+
+    private static String extractText(SseEmitter.SseEventBuilder event) {
+        return event.build().stream()
+            .map(ResponseBodyEmitter.DataWithMediaType::getData)
+            .filter(String.class::isInstance)
+            .map(String.class::cast)
+            .collect(Collectors.joining());
+    }
+
+    private static CheckInCredential createCheckInCredential(String id, String deskId) {
+        CheckInCredential checkInCredential = new CheckInCredential("hotelId", deskId, "presentationExchangeId");
+        checkInCredential.setId(id);
+        return checkInCredential;
+    }
+}
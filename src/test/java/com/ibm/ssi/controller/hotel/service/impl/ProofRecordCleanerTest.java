@@ -0,0 +1,132 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.ibm.ssi.controller.hotel.client.ACAPYClient;
+import com.ibm.ssi.controller.hotel.client.AgentUnavailableException;
+import com.ibm.ssi.controller.hotel.domain.PendingProofRecordDeletion;
+import com.ibm.ssi.controller.hotel.repository.PendingProofRecordDeletionRepository;
+import feign.FeignException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ProofRecordCleanerTest {
+
+    private static final String APIKEY = "apikey";
+
+    @Mock
+    ACAPYClient acapyClient;
+
+    @Mock
+    PendingProofRecordDeletionRepository pendingDeletionRepository;
+
+    SimpleMeterRegistry meterRegistry;
+
+    ProofRecordCleaner proofRecordCleaner;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        proofRecordCleaner = new ProofRecordCleaner(acapyClient, pendingDeletionRepository, Runnable::run, meterRegistry,
+            APIKEY, 2, 3, 1000, 3000);
+    }
+
+    @Test
+    void testScheduledDeletionIsPersisted() {
+        proofRecordCleaner.scheduleDeletion("id1");
+
+        ArgumentCaptor<PendingProofRecordDeletion> captor = ArgumentCaptor.forClass(PendingProofRecordDeletion.class);
+        verify(pendingDeletionRepository).save(captor.capture());
+        assertThat(captor.getValue().getPresentationExchangeId()).isEqualTo("id1");
+        assertThat(captor.getValue().getAttempts()).isZero();
+        verifyNoInteractions(acapyClient);
+        assertThat(meterRegistry.get("hotel.controller.proof.cleanup.backlog").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void testDueDeletionsAreDeletedInBatches() {
+        when(pendingDeletionRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(any(), any(Pageable.class)))
+            .thenReturn(pending("id1", "id2"), pending("id3"));
+        doThrow(FeignException.NotFound.class).when(acapyClient).deleteProofRecord(APIKEY, "id2");
+
+        proofRecordCleaner.scheduleCleanup();
+
+        verify(acapyClient).deleteProofRecord(APIKEY, "id1");
+        verify(acapyClient).deleteProofRecord(APIKEY, "id3");
+        verify(pendingDeletionRepository).deleteByPresentationExchangeIdIn(Arrays.asList("id1", "id2"));
+        verify(pendingDeletionRepository).deleteByPresentationExchangeIdIn(Collections.singletonList("id3"));
+        verify(pendingDeletionRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void testFailedDeletionIsRetriedWithBackoff() {
+        List<PendingProofRecordDeletion> batch = pending("id1");
+        when(pendingDeletionRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(any(), any(Pageable.class)))
+            .thenReturn(batch);
+        doThrow(new RuntimeException("agent error")).when(acapyClient).deleteProofRecord(APIKEY, "id1");
+
+        long start = System.currentTimeMillis();
+        proofRecordCleaner.cleanUp();
+
+        verify(pendingDeletionRepository).saveAll(batch);
+        verify(pendingDeletionRepository, never()).deleteByPresentationExchangeIdIn(any());
+        assertThat(batch.get(0).getAttempts()).isEqualTo(1);
+        assertThat(batch.get(0).getNextAttempt().getTime()).isBetween(start + 1000, System.currentTimeMillis() + 1000);
+
+        proofRecordCleaner.cleanUp();
+
+        assertThat(batch.get(0).getAttempts()).isEqualTo(2);
+        assertThat(batch.get(0).getNextAttempt().getTime()).isGreaterThanOrEqualTo(start + 2000);
+    }
+
+    @Test
+    void testDeletionIsGivenUpAfterMaxAttempts() {
+        List<PendingProofRecordDeletion> batch = pending("id1");
+        batch.get(0).setAttempts(2);
+        when(pendingDeletionRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(any(), any(Pageable.class)))
+            .thenReturn(batch);
+        doThrow(new RuntimeException("agent error")).when(acapyClient).deleteProofRecord(APIKEY, "id1");
+
+        proofRecordCleaner.cleanUp();
+
+        verify(pendingDeletionRepository).deleteByPresentationExchangeIdIn(Collections.singletonList("id1"));
+        assertThat(meterRegistry.get("hotel.controller.proof.cleanup.deletions").tag("result", "abandoned")
+            .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testUnavailableAgentPostponesTheRemainingDeletions() {
+        List<PendingProofRecordDeletion> batch = pending("id1", "id2");
+        when(pendingDeletionRepository.findByNextAttemptLessThanEqualOrderByNextAttemptAsc(any(), any(Pageable.class)))
+            .thenReturn(batch);
+        doThrow(new AgentUnavailableException("open")).when(acapyClient).deleteProofRecord(anyString(), anyString());
+        when(pendingDeletionRepository.count()).thenReturn(2L);
+
+        proofRecordCleaner.cleanUp();
+
+        verify(acapyClient, times(1)).deleteProofRecord(anyString(), anyString());
+        verify(pendingDeletionRepository, times(1)).findByNextAttemptLessThanEqualOrderByNextAttemptAsc(any(), any(Pageable.class));
+        verify(pendingDeletionRepository, never()).saveAll(any());
+        assertThat(batch).allMatch(pendingDeletion -> pendingDeletion.getAttempts() == 0);
+        assertThat(meterRegistry.get("hotel.controller.proof.cleanup.backlog").gauge().value()).isEqualTo(2);
+    }
+
+    private static List<PendingProofRecordDeletion> pending(String... presentationExchangeIds) {
+        return Arrays.stream(presentationExchangeIds).map(PendingProofRecordDeletion::new)
+            .collect(Collectors.toList());
+    }
+}
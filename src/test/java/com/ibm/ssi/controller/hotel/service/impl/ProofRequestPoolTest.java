@@ -0,0 +1,127 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.ssi.controller.hotel.client.ACAPYClient;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ProofRequestPoolTest {
+
+    private static final String APIKEY = "apikey";
+
+    @Mock
+    ACAPYClient acapyClient;
+
+    @Mock
+    TaskScheduler taskScheduler;
+
+    SimpleMeterRegistry meterRegistry;
+
+    AtomicInteger created;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        created = new AtomicInteger();
+        when(acapyClient.createProofRequest(eq(APIKEY), any(ProofRequestDTO.class))).then(invocation -> {
+            ProofResponseDTO proofResponseDTO = new ProofResponseDTO();
+            ReflectionTestUtils.setField(proofResponseDTO, "presentationExchangeId", "id" + created.incrementAndGet());
+            return proofResponseDTO;
+        });
+    }
+
+    @Test
+    void testDisabledPoolAlwaysMisses() {
+        ProofRequestPool pool = createPool(0, 60000);
+        pool.start(ProofRequestDTO::new);
+
+        assertThat(pool.take()).isNull();
+        verifyNoInteractions(acapyClient, taskScheduler);
+    }
+
+    @Test
+    void testPoolIsFilledAndRefilled() {
+        ProofRequestPool pool = createPool(2, 60000);
+        pool.start(ProofRequestDTO::new);
+        assertThat(created.get()).isEqualTo(2);
+
+        assertThat(pool.take().getPresentationExchangeId()).isEqualTo("id1");
+        assertThat(created.get()).isEqualTo(3);
+        assertThat(pool.take().getPresentationExchangeId()).isEqualTo("id2");
+
+        assertThat(meterRegistry.get("hotel.controller.proof.pool.requests").tag("result", "hit").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("hotel.controller.proof.pool.refill").timer().count()).isEqualTo(4);
+    }
+
+    @Test
+    void testAgentFailureLeadsToMiss() {
+        when(acapyClient.createProofRequest(anyString(), any(ProofRequestDTO.class))).thenThrow(new RuntimeException("agent down"));
+        ProofRequestPool pool = createPool(2, 60000);
+        pool.start(ProofRequestDTO::new);
+
+        assertThat(pool.take()).isNull();
+        assertThat(meterRegistry.get("hotel.controller.proof.pool.requests").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testExpiredProofRequestsAreDeletedAtAgent() throws InterruptedException {
+        ProofRequestPool pool = createPool(1, 10);
+        pool.start(ProofRequestDTO::new);
+        Thread.sleep(20);
+
+        pool.expire();
+
+        verify(acapyClient).deleteProofRecord(APIKEY, "id1");
+        assertThat(meterRegistry.get("hotel.controller.proof.pool.expired").counter().count()).isEqualTo(1);
+        // the pool was refilled with a fresh proof request
+        assertThat(created.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testRestartDiscardsPooledProofRequests() {
+        ProofRequestPool pool = createPool(1, 60000);
+        pool.start(ProofRequestDTO::new);
+
+        pool.start(ProofRequestDTO::new);
+
+        verify(acapyClient).deleteProofRecord(APIKEY, "id1");
+        assertThat(pool.take().getPresentationExchangeId()).isEqualTo("id2");
+    }
+
+    @Test
+    void testProofRequestCreatedDuringRestartIsDiscarded() {
+        ProofRequestPool pool = createPool(1, 60000);
+        ProofRequestDTO outdatedRequest = new ProofRequestDTO();
+        ProofRequestDTO currentRequest = new ProofRequestDTO();
+        doAnswer(invocation -> {
+            // the pool is restarted while the agent creates the proof request
+            pool.start(() -> currentRequest);
+            ProofResponseDTO proofResponseDTO = new ProofResponseDTO();
+            ReflectionTestUtils.setField(proofResponseDTO, "presentationExchangeId", "outdated");
+            return proofResponseDTO;
+        }).when(acapyClient).createProofRequest(APIKEY, outdatedRequest);
+
+        pool.start(() -> outdatedRequest);
+
+        verify(acapyClient).deleteProofRecord(APIKEY, "outdated");
+        assertThat(pool.take().getPresentationExchangeId()).isEqualTo("id1");
+    }
+
+    private ProofRequestPool createPool(int size, long maxAge) {
+        return new ProofRequestPool(acapyClient, Runnable::run, taskScheduler, meterRegistry, APIKEY, size, maxAge);
+    }
+}
@@ -1,10 +1,10 @@
 package com.ibm.ssi.controller.hotel.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibm.ssi.controller.hotel.client.ACAPYClient;
 import com.ibm.ssi.controller.hotel.client.model.*;
 import com.ibm.ssi.controller.hotel.domain.CheckInCredential;
 import com.ibm.ssi.controller.hotel.service.CheckInCredentialService;
-import com.ibm.ssi.controller.hotel.service.NotificationService;
 import com.ibm.ssi.controller.hotel.service.dto.CorporateIdDTO;
 import com.ibm.ssi.controller.hotel.service.dto.MasterIdDTO;
 import com.ibm.ssi.controller.hotel.service.dto.WebhookPresentProofDTO;
@@ -15,13 +15,18 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.assertj.core.util.introspection.PropertyOrFieldSupport;
 import org.slf4j.Logger;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.core.env.Environment;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URI;
-import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -47,9 +52,6 @@ class ProofServiceImplTest {
     @Mock
     Logger LOG;
 
-    @Mock
-    SecureRandom secureRandom;
-
     @Mock
     ACAPYClient acapyClient;
 
@@ -57,7 +59,13 @@ class ProofServiceImplTest {
     CheckInCredentialService checkInCredentialService;
 
     @Mock
-    NotificationService notificationService;
+    Environment environment;
+
+    @Mock
+    ProofRequestPool proofRequestPool;
+
+    @Mock
+    ProofRecordCleaner proofRecordCleaner;
 
     @InjectMocks
     ProofServiceImpl proofServiceImpl;
@@ -70,6 +78,9 @@ class ProofServiceImplTest {
         ReflectionTestUtils.setField(proofServiceImpl, "corporateIdSchemaIdsString", "coorporateIDs");
         ReflectionTestUtils.setField(proofServiceImpl, "corporateIdIssuerDidsString", "coorporateDIDs");
         ReflectionTestUtils.setField(proofServiceImpl, "masterIdCredDefIdsString", "masterDID");
+        ReflectionTestUtils.setField(proofServiceImpl, "nonceGenerator", new NonceGenerator(Runnable::run, 0));
+        ReflectionTestUtils.setField(proofServiceImpl, "objectMapper", new ObjectMapper());
+        proofServiceImpl.init();
     }
 
     @Test
@@ -92,6 +103,55 @@ class ProofServiceImplTest {
             "dateOfExpiry", "dateOfBirth", "hardwareDid"));
     }
 
+    @Test
+    void testGetProofURIUsesPooledProofRequest() {
+        ProofResponseDTO proofResponseDTO = createProofResponse();
+        ReflectionTestUtils.setField(proofResponseDTO, "presentationExchangeId", ANY_ID);
+        when(proofRequestPool.take()).thenReturn(proofResponseDTO);
+
+        URI result = proofServiceImpl.getProofURI("hotelId", "deskId");
+
+        assertThat(result.toString()).startsWith(DIDCOMM_URL);
+        verify(acapyClient, never()).createProofRequest(anyString(), any());
+        verify(checkInCredentialService).createCheckInCredential("hotelId", "deskId", ANY_ID);
+    }
+
+    @Test
+    void testProofRequestsShareTemplate() {
+        ReflectionTestUtils.setField(proofServiceImpl, "corporateIdSchemaIdsString", "schema1,schema2");
+        ReflectionTestUtils.setField(proofServiceImpl, "corporateIdIssuerDidsString", "issuer1,issuer2");
+        proofServiceImpl.init();
+        ArgumentCaptor<ProofRequestDTO> proofRequestCaptor = ArgumentCaptor.forClass(ProofRequestDTO.class);
+        when(acapyClient.createProofRequest(anyString(), proofRequestCaptor.capture())).thenReturn(createProofResponse());
+
+        proofServiceImpl.getProofURI("hotelId", "deskId");
+        proofServiceImpl.getProofURI("hotelId", "deskId");
+
+        ProofRequestDTO first = proofRequestCaptor.getAllValues().get(0);
+        ProofRequestDTO second = proofRequestCaptor.getAllValues().get(1);
+        String restrictions = "proofRequest.requestedAttributes.corporateId.restrictions";
+        assertThat(first).extracting(restrictions).asList()
+            .hasSize(4)
+            .contains(Map.of("schema_id", "schema2", "issuer_did", "issuer1"));
+        assertThat(extract(first, restrictions)).isSameAs(extract(second, restrictions));
+        assertThat(extract(first, "proofRequest.nonce")).isNotEqualTo(extract(second, "proofRequest.nonce"));
+    }
+
+    @Test
+    void testEnvironmentChangeRebuildsTemplate() {
+        String key = "ssibk.hotel.controller.agent.masterid.credential_definition_ids";
+        when(environment.getProperty(anyString(), anyString())).then(invocation -> invocation.getArgument(1));
+        when(environment.getProperty(eq(key), anyString())).thenReturn("credDef1,credDef2");
+        ArgumentCaptor<ProofRequestDTO> proofRequestCaptor = ArgumentCaptor.forClass(ProofRequestDTO.class);
+        when(acapyClient.createProofRequest(anyString(), proofRequestCaptor.capture())).thenReturn(createProofResponse());
+
+        proofServiceImpl.onEnvironmentChange(new EnvironmentChangeEvent(Set.of(key)));
+        proofServiceImpl.getProofURI("hotelId", "deskId");
+
+        assertThat(proofRequestCaptor.getValue()).extracting("proofRequest.requestedAttributes.masterId.restrictions").asList()
+            .containsExactly(Map.of("cred_def_id", "credDef1"), Map.of("cred_def_id", "credDef2"));
+    }
+
     @Test
     void testHandleProofWebhookVerified() throws CheckinCredentialNotFoundException {
         when(acapyClient.getProofRecord(eq(APIKEY), anyString())).thenReturn(new ProofRecordDTO());
@@ -103,11 +163,59 @@ class ProofServiceImplTest {
 
         proofServiceImpl.handleProofWebhook(proofDTO);
 
-        verify(acapyClient).deleteProofRecord(APIKEY, ANY_ID);
+        verify(checkInCredentialService).updateValidity(ANY_ID, false);
+        verify(proofRecordCleaner).scheduleDeletion(ANY_ID);
+        verify(acapyClient, never()).deleteProofRecord(anyString(), any());
     }
 
     @Test
     void testHandleProofWebhookReceived() throws CheckinCredentialNotFoundException {
+        ProofRecordDTO recordDTO = new ProofRecordDTO();
+        ReflectionTestUtils.setField(recordDTO, "presentation", createPresentation());
+        when(acapyClient.getProofRecord(APIKEY, ANY_ID)).thenReturn(recordDTO);
+
+        WebhookPresentProofDTO proofDTO = new WebhookPresentProofDTO();
+        ReflectionTestUtils.setField(proofDTO, "state", "presentation_received");
+        ReflectionTestUtils.setField(proofDTO, "presentationExchangeId", ANY_ID);
+        proofServiceImpl.handleProofWebhook(proofDTO);
+
+        ArgumentCaptor<MasterIdDTO> masterIdCaptor = ArgumentCaptor.forClass(MasterIdDTO.class);
+        ArgumentCaptor<CorporateIdDTO> corporateIdCaptor = ArgumentCaptor.forClass(CorporateIdDTO.class);
+        verify(acapyClient, times(0)).deleteProofRecord(anyString(), any());
+        verify(proofRecordCleaner, never()).scheduleDeletion(any());
+        verify(checkInCredentialService).updateCheckinCredential(eq(ANY_ID), masterIdCaptor.capture(), corporateIdCaptor.capture());
+//        assertThat(masterIdCaptor.getValue()).extracting("hardwareDid").containsAll( Arrays.asList(HARDWARE_DID));
+    }
+
+    @Test
+    void testHandleProofWebhookReceivedUsesPresentationOfWebhook() throws CheckinCredentialNotFoundException {
+        WebhookPresentProofDTO proofDTO = new WebhookPresentProofDTO();
+        ReflectionTestUtils.setField(proofDTO, "state", "presentation_received");
+        ReflectionTestUtils.setField(proofDTO, "presentationExchangeId", ANY_ID);
+        ReflectionTestUtils.setField(proofDTO, "presentation", createPresentation());
+        proofServiceImpl.handleProofWebhook(proofDTO);
+
+        ArgumentCaptor<MasterIdDTO> masterIdCaptor = ArgumentCaptor.forClass(MasterIdDTO.class);
+        ArgumentCaptor<CorporateIdDTO> corporateIdCaptor = ArgumentCaptor.forClass(CorporateIdDTO.class);
+        verify(acapyClient, never()).getProofRecord(anyString(), anyString());
+        verify(checkInCredentialService).updateCheckinCredential(eq(ANY_ID), masterIdCaptor.capture(), corporateIdCaptor.capture());
+        assertThat(masterIdCaptor.getValue().getHardwareDid()).isEqualTo(HARDWARE_DID);
+        assertThat(corporateIdCaptor.getValue().getCompanyName()).isEqualTo(FIRM_NAME);
+    }
+
+    @Test
+    void testWebhookBindsPresentation() throws IOException {
+        String json = "{\"presentation_exchange_id\": \"" + ANY_ID + "\", \"state\": \"presentation_received\","
+            + " \"presentation\": {\"requested_proof\": {\"revealed_attr_groups\": {\"masterId\": {\"sub_proof_index\": 0,"
+            + " \"values\": {\"hardwareDid\": {\"raw\": \"" + HARDWARE_DID + "\", \"encoded\": \"1\"}}}}}}}";
+
+        WebhookPresentProofDTO proofDTO = new ObjectMapper().readValue(json, WebhookPresentProofDTO.class);
+
+        assertThat(proofDTO.getPresentation().getRequestedProof().getRevealedAttrGroups().getMasterId().getValues()
+            .getHardwareDid().getRaw()).isEqualTo(HARDWARE_DID);
+    }
+
+    private static Presentation createPresentation() {
         RevealedAttrValuesMasterId masterId = new RevealedAttrValuesMasterId();
         masterId.setFirstName(new Property());
         masterId.getFirstName().setRaw(FIRST_NAME);
@@ -156,20 +264,21 @@ class ProofServiceImplTest {
         ReflectionTestUtils.setField(requestedProof, "revealedAttrGroups", revealedAttrGroups);
         Presentation presentation = new Presentation();
         ReflectionTestUtils.setField(presentation, "requestedProof", requestedProof);
-        ProofRecordDTO recordDTO = new ProofRecordDTO();
-        ReflectionTestUtils.setField(recordDTO, "presentation", presentation);
-        when(acapyClient.getProofRecord(APIKEY, ANY_ID)).thenReturn(recordDTO);
+        return presentation;
+    }
 
-        WebhookPresentProofDTO proofDTO = new WebhookPresentProofDTO();
-        ReflectionTestUtils.setField(proofDTO, "state", "presentation_received");
-        ReflectionTestUtils.setField(proofDTO, "presentationExchangeId", ANY_ID);
-        proofServiceImpl.handleProofWebhook(proofDTO);
+    private static ProofResponseDTO createProofResponse() {
+        ProofRequestDict requestDict = new ProofRequestDict();
+        RequestPresentationAttach presentationAttach = new RequestPresentationAttach();
+        presentationAttach.setData(new Base64Payload());
+        requestDict.setRequestPresentationsAttach(new RequestPresentationAttach[]{presentationAttach});
+        ProofResponseDTO proofResponseDTO = new ProofResponseDTO();
+        ReflectionTestUtils.setField(proofResponseDTO, "proofRequestDict", requestDict);
+        return proofResponseDTO;
+    }
 
-        ArgumentCaptor<MasterIdDTO> masterIdCaptor = ArgumentCaptor.forClass(MasterIdDTO.class);
-        ArgumentCaptor<CorporateIdDTO> corporateIdCaptor = ArgumentCaptor.forClass(CorporateIdDTO.class);
-        verify(acapyClient, times(0)).deleteProofRecord(anyString(), any());
-        verify(checkInCredentialService).updateCheckinCredential(eq(ANY_ID), masterIdCaptor.capture(), corporateIdCaptor.capture());
-//        assertThat(masterIdCaptor.getValue()).extracting("hardwareDid").containsAll( Arrays.asList(HARDWARE_DID));
+    private static Object extract(Object object, String path) {
+        return PropertyOrFieldSupport.EXTRACTION.getValueOf(path, object);
     }
 
     @Test
@@ -0,0 +1,69 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.ibm.ssi.controller.hotel.client.model.ConnectionlessProofRequest;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestService;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestThread;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProofUriEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ProofUriEncoder proofUriEncoder = new ProofUriEncoder(objectMapper);
+
+    @Test
+    void testEncodedUriContainsBase64EncodedJson() throws Exception {
+        ConnectionlessProofRequest connectionlessProofRequest = createConnectionlessProofRequest("threadId");
+
+        URI uri = proofUriEncoder.encode(connectionlessProofRequest);
+
+        String expected = Base64.getEncoder().encodeToString(
+            objectMapper.writeValueAsString(connectionlessProofRequest).getBytes(StandardCharsets.UTF_8));
+        assertThat(uri.toString()).isEqualTo(ProofUriEncoder.DIDCOMM_URL + expected);
+    }
+
+    @Test
+    void testBufferIsReusedWithoutLeftovers() throws Exception {
+        URI longRequest = proofUriEncoder.encode(createConnectionlessProofRequest("a-rather-long-thread-id-to-fill-the-buffer"));
+        URI shortRequest = proofUriEncoder.encode(createConnectionlessProofRequest("id"));
+
+        String json = new String(Base64.getDecoder().decode(
+            shortRequest.toString().substring(ProofUriEncoder.DIDCOMM_URL.length())), StandardCharsets.UTF_8);
+        assertThat(json).contains("\"@id\":\"id\"").doesNotContain("a-rather-long-thread-id");
+        assertThat(longRequest.toString()).isNotEqualTo(shortRequest.toString());
+    }
+
+    @Test
+    void testIndentationOfSharedObjectMapperIsIgnored() throws Exception {
+        ObjectMapper indentingObjectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ConnectionlessProofRequest connectionlessProofRequest = createConnectionlessProofRequest("threadId");
+
+        URI uri = new ProofUriEncoder(indentingObjectMapper).encode(connectionlessProofRequest);
+
+        assertThat(uri).isEqualTo(proofUriEncoder.encode(connectionlessProofRequest));
+    }
+
+    private static ConnectionlessProofRequest createConnectionlessProofRequest(String threadId) {
+        ConnectionlessProofRequest connectionlessProofRequest = new ConnectionlessProofRequest();
+        connectionlessProofRequest.setId(threadId);
+        connectionlessProofRequest.setType("did:sov:BzCbsNYhMrjHiqZDTUASHg;spec/present-proof/1.0/request-presentation");
+        ProofRequestService service = new ProofRequestService();
+        service.setRecipientKeys(new String[]{"recipientKey"});
+        service.setRoutingKeys(new String[0]);
+        service.setServiceEndpoint("http://localhost:8080");
+        service.setEndpointName("Hotel");
+        connectionlessProofRequest.setService(service);
+        ProofRequestThread thread = new ProofRequestThread();
+        thread.setThreadId(threadId);
+        connectionlessProofRequest.setThread(thread);
+        return connectionlessProofRequest;
+    }
+}
@@ -0,0 +1,148 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.ssi.controller.hotel.repository.EmitterRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.web.servlet.mvc.method.annotation.SseEmitter.event;
+
+class SseEventDispatcherTest {
+
+    @Mock
+    EmitterRepository emitterRepository;
+
+    @Mock
+    SseEmitter emitter;
+
+    @Mock
+    TaskScheduler taskScheduler;
+
+    SimpleMeterRegistry meterRegistry;
+
+    SseEventDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testDispatchDoesNotBlockOnSlowEmitter() throws Exception {
+        dispatcher = createDispatcher(2, SseEventDispatcher.OverflowPolicy.DROP_NEWEST, 15000);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        dispatcher.register("uuid", "hotelId", "deskId", emitter);
+
+        // the first event is taken by the worker, two more fill the queue, the fourth is dropped
+        dispatcher.dispatch("uuid", event().data("{}"));
+        Thread.sleep(100);
+        dispatcher.dispatch("uuid", event().data("{}"));
+        dispatcher.dispatch("uuid", event().data("{}"));
+        boolean lastAccepted = dispatcher.dispatch("uuid", event().data("{}"));
+
+        assertThat(lastAccepted).isFalse();
+        assertThat(meterRegistry.get("hotel.controller.sse.events.dropped").counter().count()).isEqualTo(1);
+        release.countDown();
+        verify(emitter, timeout(1000).atLeast(3)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void testSendErrorUnregistersEmitter() throws Exception {
+        dispatcher = createDispatcher(8, SseEventDispatcher.OverflowPolicy.DROP_OLDEST, 15000);
+        doThrow(new IOException("broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        dispatcher.register("uuid", "hotelId", "deskId", emitter);
+
+        dispatcher.dispatch("uuid", event().data("{}"));
+
+        verify(emitterRepository, timeout(1000)).remove("uuid");
+        assertThat(dispatcher.dispatch("uuid", event().data("{}"))).isFalse();
+        assertThat(meterRegistry.get("hotel.controller.sse.emitters.evicted").tag("hotelId", "hotelId").tag("reason", "error")
+            .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("hotel.controller.sse.emitters.live").tag("hotelId", "hotelId").gauge().value()).isZero();
+    }
+
+    @Test
+    void testOverflowDisconnectsSlowEmitter() throws Exception {
+        dispatcher = createDispatcher(1, SseEventDispatcher.OverflowPolicy.DISCONNECT, 15000);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        dispatcher.register("uuid", "hotelId", "deskId", emitter);
+
+        dispatcher.dispatch("uuid", event().data("{}"));
+        Thread.sleep(100);
+        dispatcher.dispatch("uuid", event().data("{}"));
+        dispatcher.dispatch("uuid", event().data("{}"));
+        release.countDown();
+
+        verify(emitter).complete();
+        verify(emitterRepository).remove("uuid");
+    }
+
+    @Test
+    void testHeartbeatIsSentToIdleEmitter() throws Exception {
+        dispatcher = createDispatcher(8, SseEventDispatcher.OverflowPolicy.DROP_OLDEST, 50);
+        dispatcher.register("uuid", "hotelId", "deskId", emitter);
+        assertThat(meterRegistry.get("hotel.controller.sse.emitters.live").tag("hotelId", "hotelId").gauge().value()).isEqualTo(1);
+
+        Thread.sleep(100);
+        dispatcher.heartbeat();
+
+        verify(emitter, timeout(1000)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void testFailingHeartbeatEvictsDeadConnection() throws Exception {
+        dispatcher = createDispatcher(8, SseEventDispatcher.OverflowPolicy.DROP_OLDEST, 0);
+        doThrow(new IOException("connection reset")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        dispatcher.register("uuid", "hotelId", "deskId", emitter);
+
+        dispatcher.heartbeat();
+
+        verify(emitterRepository, timeout(1000)).remove("uuid");
+        verify(emitter, timeout(1000)).completeWithError(any(IOException.class));
+    }
+
+    @Test
+    void testBlockedEmitterIsEvicted() throws Exception {
+        dispatcher = new SseEventDispatcher(emitterRepository, meterRegistry, taskScheduler, 1, 8,
+            SseEventDispatcher.OverflowPolicy.DROP_OLDEST, 15000, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        dispatcher.register("uuid", "hotelId", "deskId", emitter);
+        dispatcher.dispatch("uuid", event().data("{}"));
+
+        Thread.sleep(100);
+        dispatcher.heartbeat();
+
+        verify(emitterRepository).remove("uuid");
+        assertThat(meterRegistry.get("hotel.controller.sse.emitters.evicted").tag("reason", "stalled").counter().count()).isEqualTo(1);
+        assertThat(dispatcher.dispatch("uuid", event().data("{}"))).isFalse();
+        release.countDown();
+        verify(emitter, timeout(1000)).complete();
+    }
+
+    private SseEventDispatcher createDispatcher(int queueCapacity, SseEventDispatcher.OverflowPolicy overflowPolicy,
+            long heartbeatInterval) {
+        return new SseEventDispatcher(emitterRepository, meterRegistry, taskScheduler, 1, queueCapacity, overflowPolicy,
+            heartbeatInterval, 45000);
+    }
+}
@@ -0,0 +1,160 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.ssi.controller.hotel.HotelControllerApp;
+import com.ibm.ssi.controller.hotel.config.dbmigrations.WebhookEventMigration;
+import com.ibm.ssi.controller.hotel.domain.WebhookEvent;
+import com.ibm.ssi.controller.hotel.service.ProofService;
+import com.ibm.ssi.controller.hotel.service.WebhookQueueService;
+import com.ibm.ssi.controller.hotel.service.dto.WebhookPresentProofDTO;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Load test of the {@link WebhookQueueService} against the embedded MongoDB: the webhooks of thousands of proofs are
+ * delivered concurrently, every delivery twice.
+ */
+@SpringBootTest(classes = HotelControllerApp.class, properties = {
+    // webhooks which did not fit into the queue are redelivered while the test waits
+    "ssibk.hotel.controller.webhook.redelivery-interval=1000",
+    "ssibk.hotel.controller.webhook.redelivery-delay=5000"
+})
+public class WebhookQueueServiceIT {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WebhookQueueServiceIT.class);
+
+    private static final int PROOFS = 5000;
+
+    private static final int SENDERS = 16;
+
+    @Autowired
+    private WebhookQueueService webhookQueueService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @MockBean
+    private ProofService proofService;
+
+    @BeforeEach
+    public void setUp() {
+        // other tests drop the collection together with its indexes
+        new WebhookEventMigration().addWebhookEventIndexes(mongoTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        mongoTemplate.dropCollection(WebhookEvent.class);
+    }
+
+    @Test
+    public void testWebhooksAreProcessedOnceAndInOrder() throws Exception {
+        Map<String, List<String>> processedStates = new ConcurrentHashMap<>();
+        AtomicInteger processed = new AtomicInteger();
+        doAnswer(invocation -> {
+            WebhookPresentProofDTO webhook = invocation.getArgument(0);
+            processedStates.computeIfAbsent(webhook.getPresentationExchangeId(), id -> new CopyOnWriteArrayList<>())
+                .add(webhook.getState());
+            processed.incrementAndGet();
+            return null;
+        }).when(proofService).handleProofWebhook(any());
+
+        ExecutorService senders = Executors.newFixedThreadPool(SENDERS);
+        AtomicInteger enqueued = new AtomicInteger();
+        long start = System.nanoTime();
+        List<Future<?>> deliveries = new ArrayList<>();
+        for (int sender = 0; sender < SENDERS; sender++) {
+            int first = sender;
+            deliveries.add(senders.submit(() -> {
+                for (int proof = first; proof < PROOFS; proof += SENDERS) {
+                    // the agent sends the webhooks of a proof one after the other, and retries each of them
+                    for (String state : new String[] {"presentation_received", "verified"}) {
+                        for (int delivery = 0; delivery < 2; delivery++) {
+                            if (webhookQueueService.enqueue(webhook("proof-" + proof, state))) {
+                                enqueued.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> delivery : deliveries) {
+            delivery.get(2, TimeUnit.MINUTES);
+        }
+        double acknowledgedPerSecond = PROOFS * 4 / ((System.nanoTime() - start) / 1e9);
+        senders.shutdown();
+
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+        while ((processed.get() < PROOFS * 2 || countUnprocessed() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        double processedPerSecond = processed.get() / ((System.nanoTime() - start) / 1e9);
+        LOG.info("Acknowledged {} webhooks/s, processed {} webhooks/s", Math.round(acknowledgedPerSecond),
+            Math.round(processedPerSecond));
+
+        assertThat(enqueued.get()).isEqualTo(PROOFS * 2);
+        assertThat(processed.get()).isEqualTo(PROOFS * 2);
+        assertThat(processedStates).hasSize(PROOFS);
+        assertThat(processedStates.values()).allSatisfy(states ->
+            assertThat(states).containsExactly("presentation_received", "verified"));
+        assertThat(countUnprocessed()).isZero();
+    }
+
+    @Test
+    public void testRetriedWebhookIsRejectedAsDuplicate() {
+        doAnswer(invocation -> null).when(proofService).handleProofWebhook(any());
+
+        assertThat(webhookQueueService.enqueue(webhook("proof", "verified"))).isTrue();
+        assertThat(webhookQueueService.enqueue(webhook("proof", "verified"))).isFalse();
+
+        assertThat(mongoTemplate.count(new Query(), WebhookEvent.class)).isEqualTo(1);
+    }
+
+    @Test
+    public void testRedeliveryQueryUsesIndex() {
+        // the query of WebhookQueueServiceImpl.claimNextOverdue
+        Document find = new Document("find", mongoTemplate.getCollectionName(WebhookEvent.class))
+            .append("filter", Document.parse("{ 'processedAt': null, 'claimedAt': { '$lt': { '$date': 0 } } }"))
+            .append("sort", new Document("claimedAt", 1));
+        Document explanation = mongoTemplate.executeCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+
+        String plan = explanation.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+        assertThat(plan).contains("IXSCAN").contains("processedAt_claimedAt").doesNotContain("COLLSCAN", "\"SORT\"");
+    }
+
+    private long countUnprocessed() {
+        return mongoTemplate.count(Query.query(Criteria.where("processedAt").is(null)), WebhookEvent.class);
+    }
+
+    private static WebhookPresentProofDTO webhook(String presentationExchangeId, String state) {
+        WebhookPresentProofDTO webhook = new WebhookPresentProofDTO();
+        ReflectionTestUtils.setField(webhook, "presentationExchangeId", presentationExchangeId);
+        ReflectionTestUtils.setField(webhook, "state", state);
+        return webhook;
+    }
+}
@@ -0,0 +1,153 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.util.Date;
+import java.util.Set;
+
+import com.ibm.ssi.controller.hotel.domain.WebhookEvent;
+import com.ibm.ssi.controller.hotel.service.ProofService;
+import com.ibm.ssi.controller.hotel.service.dto.WebhookPresentProofDTO;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WebhookQueueServiceImplTest {
+
+    private static final String ID = "presentationExchangeId";
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @Mock
+    ProofService proofService;
+
+    SimpleMeterRegistry meterRegistry;
+
+    WebhookQueueServiceImpl webhookQueueService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        webhookQueueService = new WebhookQueueServiceImpl(mongoTemplate, proofService, meterRegistry, 2, 100, 60000, 2);
+        mockClaimRenewal(1);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        webhookQueueService.shutdown();
+    }
+
+    @Test
+    void testWebhooksOfAnExchangeAreProcessedInOrder() {
+        WebhookPresentProofDTO received = webhook("presentation_received");
+        WebhookPresentProofDTO verified = webhook("verified");
+
+        assertThat(webhookQueueService.enqueue(received)).isTrue();
+        assertThat(webhookQueueService.enqueue(verified)).isTrue();
+
+        InOrder inOrder = inOrder(proofService);
+        inOrder.verify(proofService, timeout(5000)).handleProofWebhook(received);
+        inOrder.verify(proofService, timeout(5000)).handleProofWebhook(verified);
+        verify(mongoTemplate, timeout(5000).times(2)).updateFirst(any(Query.class),
+            argThat(update -> update.getUpdateObject().get("$set", Document.class).containsKey("processedAt")),
+            eq(WebhookEvent.class));
+    }
+
+    @Test
+    void testDuplicateWebhookIsNotProcessed() throws InterruptedException {
+        when(mongoTemplate.insert(any(WebhookEvent.class))).thenThrow(new DuplicateKeyException("duplicate"));
+
+        assertThat(webhookQueueService.enqueue(webhook("verified"))).isFalse();
+
+        Thread.sleep(100);
+        verifyNoInteractions(proofService);
+        assertThat(meterRegistry.get("hotel.controller.webhook.received").tag("result", "duplicate").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void testVerifiedIsDeferredWhilePresentationReceivedIsPending() throws InterruptedException {
+        when(mongoTemplate.exists(any(Query.class), eq(WebhookEvent.class))).thenReturn(true);
+
+        webhookQueueService.enqueue(webhook("verified"));
+
+        verify(mongoTemplate, timeout(5000)).exists(any(Query.class), eq(WebhookEvent.class));
+        Thread.sleep(100);
+        verifyNoInteractions(proofService);
+        verify(mongoTemplate, never()).updateFirst(any(Query.class),
+            argThat(update -> !isClaimRenewal(update)), eq(WebhookEvent.class));
+    }
+
+    @Test
+    void testWebhookClaimedByAnotherNodeIsSkipped() throws InterruptedException {
+        mockClaimRenewal(0);
+
+        webhookQueueService.enqueue(webhook("presentation_received"));
+
+        verify(mongoTemplate, timeout(5000)).updateFirst(any(Query.class), argThat(WebhookQueueServiceImplTest::isClaimRenewal),
+            eq(WebhookEvent.class));
+        Thread.sleep(100);
+        verifyNoInteractions(proofService);
+        verify(mongoTemplate, never()).updateFirst(any(Query.class),
+            argThat(update -> !isClaimRenewal(update)), eq(WebhookEvent.class));
+    }
+
+    @Test
+    void testFailedWebhookIsGivenUpAfterMaxAttempts() {
+        doThrow(new RuntimeException("agent down")).when(proofService).handleProofWebhook(any());
+
+        webhookQueueService.enqueue(webhook("presentation_received"));
+        verify(mongoTemplate, timeout(5000)).updateFirst(any(Query.class),
+            argThat(update -> Integer.valueOf(1).equals(update.getUpdateObject().get("$set", Document.class).get("attempts"))),
+            eq(WebhookEvent.class));
+
+        // the event is claimed again after the redelivery delay
+        WebhookEvent overdue = new WebhookEvent(webhook("presentation_received"));
+        overdue.setAttempts(1);
+        overdue.setReceivedAt(new Date(0));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(WebhookEvent.class)))
+            .thenReturn(overdue, (WebhookEvent) null);
+        webhookQueueService.redeliver();
+
+        verify(proofService, timeout(5000).times(2)).handleProofWebhook(any());
+        verify(mongoTemplate, timeout(5000)).updateFirst(any(Query.class),
+            argThat(update -> update.getUpdateObject().get("$set", Document.class).containsKey("processedAt")),
+            eq(WebhookEvent.class));
+        assertThat(meterRegistry.get("hotel.controller.webhook.processed").tag("result", "abandoned").counter().count())
+            .isEqualTo(1);
+    }
+
+    private void mockClaimRenewal(long matchedCount) {
+        when(mongoTemplate.updateFirst(any(Query.class), argThat(WebhookQueueServiceImplTest::isClaimRenewal),
+            eq(WebhookEvent.class))).thenReturn(UpdateResult.acknowledged(matchedCount, matchedCount, null));
+    }
+
+    private static boolean isClaimRenewal(Update update) {
+        return update != null && update.getUpdateObject().get("$set", Document.class).keySet().equals(Set.of("claimedAt"));
+    }
+
+    private static WebhookPresentProofDTO webhook(String state) {
+        WebhookPresentProofDTO webhook = new WebhookPresentProofDTO();
+        ReflectionTestUtils.setField(webhook, "presentationExchangeId", ID);
+        ReflectionTestUtils.setField(webhook, "state", state);
+        return webhook;
+    }
+}
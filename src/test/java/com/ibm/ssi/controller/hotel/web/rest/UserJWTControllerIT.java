@@ -29,6 +29,7 @@ import com.ibm.ssi.controller.hotel.HotelControllerApp;
 import com.ibm.ssi.controller.hotel.domain.User;
 import com.ibm.ssi.controller.hotel.repository.UserRepository;
 import com.ibm.ssi.controller.hotel.security.AuthoritiesConstants;
+import com.ibm.ssi.controller.hotel.security.jwt.TokenProvider;
 import com.ibm.ssi.controller.hotel.service.dto.JWTTokenDTO;
 import com.ibm.ssi.controller.hotel.web.rest.vm.LoginVM;
 
@@ -38,6 +39,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
@@ -58,6 +61,9 @@ public class UserJWTControllerIT {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private TokenProvider tokenProvider;
+
     @Test
     public void testAuthorize() throws Exception {
         User user = new User();
@@ -121,11 +127,24 @@ public class UserJWTControllerIT {
     @WithMockUser(authorities = AuthoritiesConstants.USER)
     public void testLogout() throws Exception {
         JWTTokenDTO jwtTokenDTO = new JWTTokenDTO();
-        jwtTokenDTO.setToken("jwtToken");
+        jwtTokenDTO.setToken(tokenProvider.createToken(new UsernamePasswordAuthenticationToken("user", "test",
+            AuthorityUtils.createAuthorityList(AuthoritiesConstants.USER)), false, "userFingerprint"));
 
         mockMvc.perform(post("/api/logout")
             .contentType(MediaType.APPLICATION_JSON)
             .content(TestUtil.convertObjectToJsonBytes(jwtTokenDTO)))
             .andExpect(status().isCreated());
     }
+
+    @Test
+    @WithMockUser(authorities = AuthoritiesConstants.USER)
+    public void testLogoutRejectsInvalidToken() throws Exception {
+        JWTTokenDTO jwtTokenDTO = new JWTTokenDTO();
+        jwtTokenDTO.setToken("jwtToken");
+
+        mockMvc.perform(post("/api/logout")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(jwtTokenDTO)))
+            .andExpect(status().isBadRequest());
+    }
 }
@@ -0,0 +1,148 @@
+package com.ibm.ssi.controller.hotel.security.jwt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+
+import com.ibm.ssi.controller.hotel.domain.BlacklistedJWTToken;
+import com.ibm.ssi.controller.hotel.repository.JWTTokenBlacklistRepository;
+import com.ibm.ssi.controller.hotel.security.AuthoritiesConstants;
+import com.ibm.ssi.controller.hotel.security.cookie.CookieProvider;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Compares {@link JWTFilter} looking up every token in the MongoDB blacklist with the in-memory
+ * {@link JWTTokenBlacklist}. Needs a MongoDB at {@code mongoUri}, the blacklist is filled with {@code blacklistSize}
+ * other tokens and dropped afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JWTFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    private static final String USER_FINGERPRINT = "fingerprint";
+
+    @Param("mongodb://localhost:27017")
+    public String mongoUri;
+
+    @Param({"100", "10000"})
+    public int blacklistSize;
+
+    private MongoClient mongoClient;
+
+    private MongoTemplate mongoTemplate;
+
+    private JWTFilter mongoFilter;
+
+    private JWTFilter inMemoryFilter;
+
+    private String jwt;
+
+    @Setup
+    public void setUp() throws IOException {
+        mongoClient = MongoClients.create(mongoUri);
+        mongoTemplate = new MongoTemplate(mongoClient, "hotelControllerBenchmark");
+        JWTTokenBlacklistRepository repository = new MongoRepositoryFactory(mongoTemplate)
+            .getRepository(JWTTokenBlacklistRepository.class);
+
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setBase64Secret(
+            "fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8");
+        CookieProvider cookieProvider = new CookieProvider();
+
+        // a lookup of every token in MongoDB
+        JWTTokenBlacklist mongoBlacklist = new JWTTokenBlacklist(repository, new SimpleMeterRegistry()) {
+            @Override
+            public boolean isDigestBlacklisted(String digest) {
+                return repository.existsById(digest);
+            }
+        };
+        JWTTokenBlacklist inMemoryBlacklist = new JWTTokenBlacklist(repository, new SimpleMeterRegistry());
+        mongoFilter = new JWTFilter(createTokenProvider(jHipsterProperties, cookieProvider, mongoBlacklist), cookieProvider);
+        TokenProvider tokenProvider = createTokenProvider(jHipsterProperties, cookieProvider, inMemoryBlacklist);
+        inMemoryFilter = new JWTFilter(tokenProvider, cookieProvider);
+
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken("user", "password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER)));
+        List<BlacklistedJWTToken> blacklistedTokens = new ArrayList<>();
+        for (int i = 0; i < blacklistSize; i++) {
+            blacklistedTokens.add(inMemoryBlacklist.createEntry(tokenProvider.createToken(authentication, false, USER_FINGERPRINT)));
+        }
+        repository.insert(blacklistedTokens);
+        inMemoryBlacklist.init();
+
+        jwt = tokenProvider.createToken(authentication, false, USER_FINGERPRINT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoTemplate.dropCollection(BlacklistedJWTToken.class);
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public Object mongoBlacklist() throws IOException, ServletException {
+        return doFilter(mongoFilter);
+    }
+
+    @Benchmark
+    public Object inMemoryBlacklist() throws IOException, ServletException {
+        return doFilter(inMemoryFilter);
+    }
+
+    private Object doFilter(JWTFilter filter) throws IOException, ServletException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(JWTFilter.AUTHORIZATION_HEADER, "Bearer " + jwt);
+        request.setCookies(new Cookie(CookieProvider.FINGERPRINT_COOKIE, USER_FINGERPRINT));
+        filter.doFilter(request, new MockHttpServletResponse(), NO_OP_CHAIN);
+
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    private static TokenProvider createTokenProvider(JHipsterProperties jHipsterProperties, CookieProvider cookieProvider,
+            JWTTokenBlacklist jwtTokenBlacklist) {
+        // without the authentication cache, every request looks up the blacklist after verifying the token
+        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties, cookieProvider, new SimpleMeterRegistry(), 0, 60000);
+        tokenProvider.init();
+        ReflectionTestUtils.setField(tokenProvider, "jwtTokenBlacklist", jwtTokenBlacklist);
+        return tokenProvider;
+    }
+}
@@ -0,0 +1,84 @@
+package com.ibm.ssi.controller.hotel.security.jwt;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.ssi.controller.hotel.security.AuthoritiesConstants;
+import com.ibm.ssi.controller.hotel.security.cookie.CookieProvider;
+
+import io.github.jhipster.config.JHipsterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Measures the authentication overhead per request of a repeated bearer token: verifying it twice, verifying it once
+ * and taking it from the authentication cache of {@link TokenProvider}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TokenProviderBenchmark {
+
+    private TokenProvider uncachedTokenProvider;
+
+    private TokenProvider cachedTokenProvider;
+
+    private String jwt;
+
+    @Setup
+    public void setUp() throws IOException {
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setBase64Secret(
+            "fd54a45s65fds737b9aafcb3412e07ed99b267f33413274720ddbb7f6c5e64e9f14075f2d7ed041592f0b7657baf8");
+        JWTTokenBlacklist jwtTokenBlacklist = new JWTTokenBlacklist(null, new SimpleMeterRegistry());
+
+        uncachedTokenProvider = createTokenProvider(jHipsterProperties, jwtTokenBlacklist, 0);
+        cachedTokenProvider = createTokenProvider(jHipsterProperties, jwtTokenBlacklist, 10000);
+
+        jwt = cachedTokenProvider.createToken(new UsernamePasswordAuthenticationToken("user", "password",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER))), false, "fingerprint");
+    }
+
+    @Benchmark
+    public Authentication verifiedTwice() {
+        return uncachedTokenProvider.validateToken(jwt) ? uncachedTokenProvider.getAuthentication(jwt) : null;
+    }
+
+    @Benchmark
+    public Authentication verifiedOnce() {
+        return uncachedTokenProvider.authenticate(jwt);
+    }
+
+    @Benchmark
+    public Authentication cached() {
+        return cachedTokenProvider.authenticate(jwt);
+    }
+
+    private static TokenProvider createTokenProvider(JHipsterProperties jHipsterProperties,
+            JWTTokenBlacklist jwtTokenBlacklist, int cacheMaxSize) {
+        TokenProvider tokenProvider = new TokenProvider(jHipsterProperties, new CookieProvider(),
+            new SimpleMeterRegistry(), cacheMaxSize, 60000);
+        tokenProvider.init();
+        ReflectionTestUtils.setField(tokenProvider, "jwtTokenBlacklist", jwtTokenBlacklist);
+        return tokenProvider;
+    }
+}
@@ -0,0 +1,75 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.math.BigInteger;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+/**
+ * Compares a DRBG instantiated per proof request with the shared DRBG of {@link NonceGenerator}, with and without
+ * the nonce pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class NonceGeneratorBenchmark {
+
+    private ExecutorService refillExecutor;
+
+    private NonceGenerator sharedGenerator;
+
+    private NonceGenerator pooledGenerator;
+
+    @Setup
+    public void setUp() {
+        refillExecutor = Executors.newSingleThreadExecutor();
+        sharedGenerator = new NonceGenerator(refillExecutor, 0);
+        pooledGenerator = new NonceGenerator(refillExecutor, 1024);
+        pooledGenerator.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        refillExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public String drbgPerRequest() throws NoSuchAlgorithmException {
+        byte[] nonce = new byte[NonceGenerator.NONCE_BITS / 8];
+        SecureRandom random = SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(128, RESEED_ONLY, null));
+        random.nextBytes(nonce);
+        return new BigInteger(nonce).toString();
+    }
+
+    @Benchmark
+    public String sharedDrbg() {
+        return sharedGenerator.nextNonce();
+    }
+
+    @Benchmark
+    public String pooledNonce() {
+        return pooledGenerator.nextNonce();
+    }
+}
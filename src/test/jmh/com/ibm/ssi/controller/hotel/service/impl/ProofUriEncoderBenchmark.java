@@ -0,0 +1,91 @@
+package com.ibm.ssi.controller.hotel.service.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.ssi.controller.hotel.client.model.Base64Payload;
+import com.ibm.ssi.controller.hotel.client.model.ConnectionlessProofRequest;
+import com.ibm.ssi.controller.hotel.client.model.EmptyDTO;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestService;
+import com.ibm.ssi.controller.hotel.client.model.ProofRequestThread;
+import com.ibm.ssi.controller.hotel.client.model.RequestPresentationAttach;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the former per-request ObjectMapper and String based encoding of the proof URI with
+ * {@link ProofUriEncoder}. Run with {@code -prof gc} to see the bytes allocated per URI.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ProofUriEncoderBenchmark {
+
+    private static final String DIDCOMM_URL = "didcomm://example.org?m=";
+
+    private ConnectionlessProofRequest connectionlessProofRequest;
+
+    private ProofUriEncoder proofUriEncoder;
+
+    @Setup
+    public void setUp() {
+        proofUriEncoder = new ProofUriEncoder(new ObjectMapper());
+
+        String threadId = UUID.randomUUID().toString();
+        connectionlessProofRequest = new ConnectionlessProofRequest();
+        connectionlessProofRequest.setId(threadId);
+        connectionlessProofRequest.setType("did:sov:BzCbsNYhMrjHiqZDTUASHg;spec/present-proof/1.0/request-presentation");
+
+        // the attachment holds the Base64 encoded proof request created by the agent, about 2 KB
+        RequestPresentationAttach attach = new RequestPresentationAttach();
+        attach.setId("libindy-request-presentation-0");
+        attach.setMimeType("application/json");
+        Base64Payload payload = new Base64Payload();
+        payload.setBase64(Base64.getEncoder().encodeToString(new byte[1536]));
+        attach.setData(payload);
+        connectionlessProofRequest.setRequestPresentationAttach(new RequestPresentationAttach[]{attach});
+
+        ProofRequestService service = new ProofRequestService();
+        service.setRecipientKeys(new String[]{"5AWXGAgmEymQsGAq9x6dtjWQTawmjDrPGqZmWo9YbnoL"});
+        service.setRoutingKeys(new String[0]);
+        service.setServiceEndpoint("https://agent.example.org");
+        service.setEndpointName("Hotel");
+        connectionlessProofRequest.setService(service);
+
+        ProofRequestThread thread = new ProofRequestThread();
+        thread.setReceivedOrders(new EmptyDTO());
+        thread.setThreadId(threadId);
+        connectionlessProofRequest.setThread(thread);
+    }
+
+    @Benchmark
+    public URI objectMapperPerRequest() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        String msg = mapper.writeValueAsString(connectionlessProofRequest);
+        String encodedUrl = Base64.getEncoder().encodeToString(msg.getBytes());
+        return URI.create(DIDCOMM_URL + encodedUrl);
+    }
+
+    @Benchmark
+    public URI streamingEncoder() throws IOException {
+        return proofUriEncoder.encode(connectionlessProofRequest);
+    }
+}